@@ -0,0 +1,54 @@
+package etenbrinke.iocontroller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandEncoderBenchmark {
+
+    private int counter;
+
+    /**
+     Pre-encoded frame of a block write, expected to allocate nothing
+     */
+    @Benchmark
+    public void setByteDigitalOutputBlockFrame(Blackhole blackhole) {
+        int n = counter++;
+        blackhole.consume(CommandEncoder.setByteDigitalOutputBlock(n & 3, n & 255));
+    }
+
+    /**
+     Pre-encoded frame of an analog output write, expected to allocate nothing
+     */
+    @Benchmark
+    public void setVoltageAnalogOutputFrame(Blackhole blackhole) {
+        int n = counter++;
+        blackhole.consume(CommandEncoder.setVoltageAnalogOutput(n & 3, n & 1023));
+    }
+
+    /**
+     Encoding as done before the encoder: String concatenation and getBytes per command, and a separate CR
+     */
+    @Benchmark
+    public void setByteDigitalOutputBlockString(Blackhole blackhole) {
+        int n = counter++;
+        blackhole.consume(("B"+(n & 3)+","+(n & 255)).getBytes(StandardCharsets.US_ASCII));
+        blackhole.consume(new byte[]{0x0D});
+    }
+}
@@ -0,0 +1,224 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class IOControllerBenchmark {
+
+    /**
+     Simulated baud rate, 0 measures the software overhead only
+     */
+    @Param({"0", "9600"})
+    public int baudRate;
+
+    /**
+     Simulated controller turnaround in microseconds
+     */
+    @Param({"0", "1000"})
+    public long turnaroundMicros;
+
+    private IOControllerSimulator simulator;
+    private IOControllerImpl io;
+    private int counter;
+
+    @Setup(Level.Trial)
+    public void openController() throws SerialPortException {
+        Logger.getGlobal().setLevel(java.util.logging.Level.OFF);
+        simulator = new IOControllerSimulator("simulator", baudRate, turnaroundMicros);
+        simulator.setDigitalInputs(144, 0x5A5AA5A5);
+        for (int i = 0; i < 8; i++) {
+            simulator.setAnalogInput(144, i, 100 * i + 23);
+        }
+        io = new IOControllerImpl(simulator, 144);
+        io.openSerialPort();
+        io.resetController();
+    }
+
+    @TearDown(Level.Trial)
+    public void closeController() throws SerialPortException {
+        io.closeSerialPort();
+    }
+
+    private int next() {
+        return counter++;
+    }
+
+    @Benchmark
+    public void setLocalMode() throws SerialPortException {
+        io.setLocalMode(next() & 1);
+    }
+
+    @Benchmark
+    public void setEchoMode() throws SerialPortException {
+        io.setEchoMode(0);
+    }
+
+    @Benchmark
+    public void setAllDigitalOutputs() throws SerialPortException {
+        io.setAllDigitalOutputs(next() & 1);
+    }
+
+    @Benchmark
+    public void setBlockConnection() throws SerialPortException {
+        int n = next();
+        io.setBlockConnection(n & 3, (n >> 2) & 1);
+    }
+
+    @Benchmark
+    public int getBlockConnection() throws SerialPortException, SerialPortTimeoutException {
+        return io.getBlockConnection(next() & 3);
+    }
+
+    @Benchmark
+    public void setLogicalLevelDigitalOutput() throws SerialPortException {
+        int n = next();
+        io.setLogicalLevelDigitalOutput(n & 31, (n >> 5) & 1);
+    }
+
+    @Benchmark
+    public int getLogicalLevelDigitalOutput() throws SerialPortException, SerialPortTimeoutException {
+        return io.getLogicalLevelDigitalOutput(next() & 31);
+    }
+
+    @Benchmark
+    public void setByteDigitalOutputBlock() throws SerialPortException {
+        int n = next();
+        io.setByteDigitalOutputBlock(n & 3, n & 255);
+    }
+
+    @Benchmark
+    public int getByteDigitalOutputBlock() throws SerialPortException, SerialPortTimeoutException {
+        return io.getByteDigitalOutputBlock(next() & 3);
+    }
+
+    @Benchmark
+    public int getByteDigitalInputBlock() throws SerialPortException, SerialPortTimeoutException {
+        return io.getByteDigitalInputBlock(next() & 3);
+    }
+
+    @Benchmark
+    public int getLogicalLevelDigitalInput() throws SerialPortException, SerialPortTimeoutException {
+        return io.getLogicalLevelDigitalInput(next() & 31);
+    }
+
+    @Benchmark
+    public void setVoltageAnalogOutput() throws SerialPortException {
+        int n = next();
+        io.setVoltageAnalogOutput(n & 3, n % 1024);
+    }
+
+    @Benchmark
+    public double getVoltageAnalogOutput() throws SerialPortException, SerialPortTimeoutException {
+        return io.getVoltageAnalogOutput(next() & 3);
+    }
+
+    @Benchmark
+    public double getVoltageAnalogInput() throws SerialPortException, SerialPortTimeoutException {
+        return io.getVoltageAnalogInput(next() & 7);
+    }
+
+    @Benchmark
+    public void resetController() throws SerialPortException {
+        io.resetController();
+    }
+
+    /**
+     "White LED" loop of IOControllerTester: read input 0 and ramp analog output 0
+     */
+    @Benchmark
+    public void mixInputDrivenRamp() throws SerialPortException, SerialPortTimeoutException {
+        for (int k = 250; k <= 300; k = k + 10) {
+            if (io.getLogicalLevelDigitalInput(0) == 1) {
+                io.setVoltageAnalogOutput(0, k);
+            }
+        }
+    }
+
+    /**
+     Write and read back of a single output, a block and an analog output
+     */
+    @Benchmark
+    public int mixWriteReadBack() throws SerialPortException, SerialPortTimeoutException {
+        io.setLogicalLevelDigitalOutput(16, 1);
+        int level = io.getLogicalLevelDigitalOutput(16);
+        io.setByteDigitalOutputBlock(2, 123);
+        int byteValue = io.getByteDigitalOutputBlock(2);
+        io.setVoltageAnalogOutput(1, 500);
+        return level + byteValue + (int) io.getVoltageAnalogOutput(1);
+    }
+
+    /**
+     "LED fun" loop of IOControllerTester: walk the digital outputs bit by bit
+     */
+    @Benchmark
+    public void mixLedFunBits() throws SerialPortException {
+        for (int i = 0; i <= 23; i++) {
+            io.setLogicalLevelDigitalOutput(i, 1);
+            io.setLogicalLevelDigitalOutput(i + 8, 1);
+            io.setLogicalLevelDigitalOutput(i + 16, 1);
+        }
+        io.setAllDigitalOutputs(0);
+    }
+
+    /**
+     "LED fun" loop of IOControllerTester: block writes
+     */
+    @Benchmark
+    public void mixLedFunBlocks() throws SerialPortException {
+        io.setByteDigitalOutputBlock(0, 15);
+        io.setByteDigitalOutputBlock(0, 0);
+        io.setByteDigitalOutputBlock(1, 15);
+        io.setByteDigitalOutputBlock(1, 0);
+        io.setByteDigitalOutputBlock(2, 15);
+        io.setByteDigitalOutputBlock(2, 0);
+        io.setByteDigitalOutputBlock(2, 240);
+        io.setByteDigitalOutputBlock(2, 0);
+        io.setByteDigitalOutputBlock(1, 240);
+        io.setByteDigitalOutputBlock(1, 0);
+        io.setByteDigitalOutputBlock(0, 240);
+        io.setByteDigitalOutputBlock(0, 0);
+    }
+
+    /**
+     "LED fun" block writes in one session, selected and deselected once
+     */
+    @Benchmark
+    public void sessionLedFunBlocks() throws SerialPortException {
+        try (IOSession session = io.openSession()) {
+            session.setByteDigitalOutputBlock(0, 15);
+            session.setByteDigitalOutputBlock(0, 0);
+            session.setByteDigitalOutputBlock(1, 15);
+            session.setByteDigitalOutputBlock(1, 0);
+            session.setByteDigitalOutputBlock(2, 15);
+            session.setByteDigitalOutputBlock(2, 0);
+            session.setByteDigitalOutputBlock(2, 240);
+            session.setByteDigitalOutputBlock(2, 0);
+            session.setByteDigitalOutputBlock(1, 240);
+            session.setByteDigitalOutputBlock(1, 0);
+            session.setByteDigitalOutputBlock(0, 240);
+            session.setByteDigitalOutputBlock(0, 0);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package etenbrinke.iocontroller;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class IOControllerBenchmarkRunner {
+
+    /**
+     Run the benchmarks with the GC profiler so the allocation rate is reported next to latency and throughput
+     Accepts the usual JMH command line options, e.g. IOControllerBenchmark.setByte -p baudRate=0
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,11 @@
+package etenbrinke.iocontroller;
+
+public interface AnalogInputListener {
+    /**
+     Called on the sampler thread when an analog input moved at least the deadband away from the last reported voltage
+     @param analogInput number 0-7
+     @param voltage new voltage in V 0-10.23
+     @param timestampNanos System.nanoTime() when the sample was read
+     */
+    void analogInputChanged(int analogInput, double voltage, long timestampNanos);
+}
@@ -0,0 +1,380 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+public class AnalogSampler {
+
+    private static final Logger LOG = Logger.getGlobal();
+    private static final int ANALOG_INPUTS = 8;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int MIN = 0;
+    private static final int MAX = 1;
+    private static final int MEAN = 2;
+    private final IOControllerImpl io;
+    private final Channel[] channels = new Channel[ANALOG_INPUTS];
+    private final List<AnalogInputListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long sampleCount;
+    private volatile long overrunCount;
+    private volatile long errorCount;
+    private volatile boolean running;
+    private volatile IORecorder recorder;
+    private Thread thread;
+
+    /**
+     Sampler that reads the 8 analog inputs of a controller with v commands on a background thread,
+     each at its own rate, into preallocated ring buffers of voltages and timestamps
+     Inputs that are due together are read in one session. Sampling does not allocate per sample
+     The samples lock the controller, other threads using it concurrently have to synchronize on it as well
+     @param io controller, the serial port must be opened
+     @param capacity number of samples kept per analog input
+     */
+    public AnalogSampler(IOControllerImpl io, int capacity) {
+        this.io = io;
+        for (int i = 0; i < ANALOG_INPUTS; i++) {
+            channels[i] = new Channel(Math.max(1, capacity));
+        }
+    }
+
+    /**
+     Set the sample rate of an analog input
+     @param analogInput number 0-7
+     @param samplesPerSecond samples per second, 0 to stop sampling the input
+     */
+    public void setSampleRate(int analogInput, double samplesPerSecond) {
+        if (analogInput >= 0 && analogInput < ANALOG_INPUTS && samplesPerSecond >= 0) {
+            Channel channel = channels[analogInput];
+            channel.periodNanos = samplesPerSecond == 0 ? 0 : Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / samplesPerSecond));
+            channel.nextDueNanos = System.nanoTime();
+            Thread sampler = thread;
+            if (sampler != null) {
+                LockSupport.unpark(sampler);
+            }
+        } else {
+            LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        }
+    }
+
+    /**
+     @param analogInput number 0-7
+     @return samples per second, 0 when the input is not sampled, -1 parameter out of range
+     */
+    public double getSampleRate(int analogInput) {
+        if (analogInput >= 0 && analogInput < ANALOG_INPUTS) {
+            long periodNanos = channels[analogInput].periodNanos;
+            return periodNanos == 0 ? 0 : (double) TimeUnit.SECONDS.toNanos(1) / periodNanos;
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     Set the change in voltage that is reported to the listeners
+     @param analogInput number 0-7
+     @param deadband voltage in V, 0 reports every change
+     */
+    public void setDeadband(int analogInput, double deadband) {
+        if (analogInput >= 0 && analogInput < ANALOG_INPUTS && deadband >= 0) {
+            channels[analogInput].deadband = deadband;
+        } else {
+            LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        }
+    }
+
+    /**
+     Record every sample taken by the sampler
+     @param recorder recorder to append the samples to, null to stop recording
+     */
+    public void setRecorder(IORecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void addListener(AnalogInputListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(AnalogInputListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     Start sampling. The first sample of an input sets the reference voltage and is not reported
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        long now = System.nanoTime();
+        for (Channel channel : channels) {
+            channel.nextDueNanos = now;
+        }
+        thread = new Thread(this::run, "AnalogSampler-"+io.getIoAddress());
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Analog sampler started");
+    }
+
+    /**
+     Stop sampling and wait for the running samples to complete
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        LOG.info(() -> "Analog sampler stopped after "+sampleCount+" samples");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     @param analogInput number 0-7
+     @return last sampled voltage in V, NaN when not sampled yet or parameter out of range
+     */
+    public double getLatest(int analogInput) {
+        if (analogInput >= 0 && analogInput < ANALOG_INPUTS) {
+            Channel channel = channels[analogInput];
+            synchronized (channel) {
+                return channel.count == 0 ? Double.NaN : channel.voltages[channel.newest()];
+            }
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return Double.NaN;
+    }
+
+    /**
+     Lowest voltage sampled in the window
+     @param analogInput number 0-7
+     @param windowMillis window ending now
+     @return voltage in V, NaN without samples in the window or parameter out of range
+     */
+    public double getMin(int analogInput, long windowMillis) {
+        return aggregate(analogInput, windowMillis, MIN);
+    }
+
+    /**
+     Highest voltage sampled in the window
+     @param analogInput number 0-7
+     @param windowMillis window ending now
+     @return voltage in V, NaN without samples in the window or parameter out of range
+     */
+    public double getMax(int analogInput, long windowMillis) {
+        return aggregate(analogInput, windowMillis, MAX);
+    }
+
+    /**
+     Mean of the voltages sampled in the window
+     @param analogInput number 0-7
+     @param windowMillis window ending now
+     @return voltage in V, NaN without samples in the window or parameter out of range
+     */
+    public double getMean(int analogInput, long windowMillis) {
+        return aggregate(analogInput, windowMillis, MEAN);
+    }
+
+    /**
+     Copy the buffered samples of an analog input, oldest first, into arrays owned by the caller
+     @param analogInput number 0-7
+     @param voltages receives the voltages in V
+     @param timestampsNanos receives the System.nanoTime() of the samples, same length as voltages
+     @return number of samples copied, the newest that fit, -1 parameter out of range
+     */
+    public int copySamples(int analogInput, double[] voltages, long[] timestampsNanos) {
+        if (analogInput < 0 || analogInput >= ANALOG_INPUTS || voltages.length != timestampsNanos.length) {
+            LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+            return -1;
+        }
+        Channel channel = channels[analogInput];
+        synchronized (channel) {
+            int copied = Math.min(channel.count, voltages.length);
+            int index = channel.newest() - copied + 1;
+            if (index < 0) {
+                index += channel.voltages.length;
+            }
+            for (int i = 0; i < copied; i++) {
+                voltages[i] = channel.voltages[index];
+                timestampsNanos[i] = channel.timestamps[index];
+                index = index + 1 == channel.voltages.length ? 0 : index + 1;
+            }
+            return copied;
+        }
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     @return number of samples taken late because the controller could not keep up with the sample rates
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    private double aggregate(int analogInput, long windowMillis, int function) {
+        if (analogInput < 0 || analogInput >= ANALOG_INPUTS || windowMillis < 0) {
+            LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+            return Double.NaN;
+        }
+        long since = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        Channel channel = channels[analogInput];
+        synchronized (channel) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            int n = 0;
+            int index = channel.newest();
+            for (int i = 0; i < channel.count && channel.timestamps[index] - since >= 0; i++) {
+                double voltage = channel.voltages[index];
+                min = Math.min(min, voltage);
+                max = Math.max(max, voltage);
+                sum += voltage;
+                n++;
+                index = index == 0 ? channel.voltages.length - 1 : index - 1;
+            }
+            if (n == 0) {
+                return Double.NaN;
+            }
+            return function == MIN ? min : function == MAX ? max : sum / n;
+        }
+    }
+
+    /**
+     Sample loop against absolute deadlines per input, so the sample rates do not drift with the read duration
+     */
+    private void run() {
+        while (running) {
+            long now = System.nanoTime();
+            long earliest = now + IDLE_PARK_NANOS;
+            int due = 0;
+            for (int i = 0; i < ANALOG_INPUTS; i++) {
+                Channel channel = channels[i];
+                if (channel.periodNanos == 0) {
+                    continue;
+                }
+                if (channel.nextDueNanos - now <= 0) {
+                    due |= 1 << i;
+                } else if (channel.nextDueNanos - earliest < 0) {
+                    earliest = channel.nextDueNanos;
+                }
+            }
+            if (due == 0) {
+                LockSupport.parkNanos(earliest - now);
+                continue;
+            }
+            try {
+                sample(due);
+            } catch (SerialPortException | SerialPortTimeoutException e) {
+                errorCount++;
+                LOG.info(() -> "Analog sample failed : "+e.getMessage());
+            }
+            now = System.nanoTime();
+            for (int i = 0; i < ANALOG_INPUTS; i++) {
+                Channel channel = channels[i];
+                if ((due & (1 << i)) != 0 && channel.periodNanos != 0) {
+                    channel.nextDueNanos += channel.periodNanos;
+                    if (channel.nextDueNanos - now < 0) {
+                        overrunCount++;
+                        channel.nextDueNanos = now;
+                    }
+                }
+            }
+        }
+    }
+
+    private void sample(int due) throws SerialPortException, SerialPortTimeoutException {
+        synchronized (io) {
+            try (IOSession session = io.openSession()) {
+                while (due != 0) {
+                    int analogInput = Integer.numberOfTrailingZeros(due);
+                    due &= due - 1;
+                    double voltage = session.getVoltageAnalogInput(analogInput);
+                    record(analogInput, voltage, System.nanoTime());
+                }
+            }
+        }
+    }
+
+    private void record(int analogInput, double voltage, long timestampNanos) {
+        Channel channel = channels[analogInput];
+        synchronized (channel) {
+            channel.head = channel.head + 1 == channel.voltages.length ? 0 : channel.head + 1;
+            channel.voltages[channel.head] = voltage;
+            channel.timestamps[channel.head] = timestampNanos;
+            channel.count = Math.min(channel.count + 1, channel.voltages.length);
+        }
+        sampleCount++;
+        IORecorder sampleRecorder = recorder;
+        if (sampleRecorder != null) {
+            sampleRecorder.recordAnalogSample(io.getIoAddress(), analogInput, voltage, timestampNanos);
+        }
+        if (Double.isNaN(channel.reported)) {
+            channel.reported = voltage;
+        } else if (Math.abs(voltage - channel.reported) >= channel.deadband && voltage != channel.reported) {
+            channel.reported = voltage;
+            fireChanged(analogInput, voltage, timestampNanos);
+        }
+    }
+
+    private void fireChanged(int analogInput, double voltage, long timestampNanos) {
+        for (AnalogInputListener listener : listeners) {
+            try {
+                listener.analogInputChanged(analogInput, voltage, timestampNanos);
+            } catch (RuntimeException e) {
+                LOG.info(() -> "Analog input listener failed : "+e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AnalogSampler{"+
+                "ioAddress="+io.getIoAddress()+
+                ", running="+running+
+                ", sampleCount="+sampleCount+
+                '}';
+    }
+
+    /**
+     Ring buffer of the samples of one analog input
+     */
+    private static final class Channel {
+        final double[] voltages;
+        final long[] timestamps;
+        int head = -1;
+        int count;
+        volatile long periodNanos;
+        volatile long nextDueNanos;
+        volatile double deadband;
+        double reported = Double.NaN;
+
+        Channel(int capacity) {
+            voltages = new double[capacity];
+            timestamps = new long[capacity];
+        }
+
+        int newest() {
+            return head;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+public class AsyncIOController implements IOExecutor, AutoCloseable {
+
+    /**
+     What to do when a command is submitted while the queue is full
+     */
+    public enum OverflowPolicy {
+        /** wait until the queue has room */
+        BLOCK,
+        /** complete the future with a RejectedExecutionException */
+        REJECT
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final int MAX_BATCH = 64;
+    private static final int POLL_MS = 50;
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+    private final BlockingQueue<IORequest<?>> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread thread;
+    /**
+     Submitters share the read lock while they check running and queue, close takes the write lock to stop them
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    public AsyncIOController(IOControllerImpl io) {
+        this(io, DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     Asynchronous front end of a controller. All commands are queued and executed by one I/O thread
+     Commands that are queued back to back are executed in one session, so the controller
+     is only selected and deselected once for the whole batch
+     @param io controller, the serial port must be opened
+     @param queueCapacity maximum number of queued commands
+     @param overflowPolicy BLOCK to wait for room in the queue, REJECT to fail the command
+     */
+    public AsyncIOController(IOControllerImpl io, int queueCapacity, OverflowPolicy overflowPolicy) {
+        this.io = io;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.overflowPolicy = overflowPolicy;
+        this.thread = new Thread(this::run, "AsyncIOController-"+io.getIoAddress());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     Queue a task for the I/O thread
+     @param task commands to run on the controller
+     @return future completed with the result of the task or the exception it threw
+     */
+    @Override
+    public <T> CompletableFuture<T> submit(IOTask<T> task) {
+        IORequest<T> request = new IORequest<>(task);
+        closeLock.readLock().lock();
+        try {
+            if (!running) {
+                request.future.completeExceptionally(new RejectedExecutionException("AsyncIOController closed"));
+            } else if (overflowPolicy == OverflowPolicy.BLOCK) {
+                try {
+                    queue.put(request);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    request.future.completeExceptionally(ie);
+                }
+            } else if (!queue.offer(request)) {
+                request.future.completeExceptionally(new RejectedExecutionException("Command queue full"));
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return request.future;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public CompletableFuture<Void> resetController() {
+        return submit(c -> { c.resetController(); return null; });
+    }
+
+    public CompletableFuture<Void> setLocalMode(int localSwitch) {
+        return submit(c -> { c.setLocalMode(localSwitch); return null; });
+    }
+
+    public CompletableFuture<Void> setEchoMode(int echoSwitch) {
+        return submit(c -> { c.setEchoMode(echoSwitch); return null; });
+    }
+
+    public CompletableFuture<Void> setAllDigitalOutputs(int stateSwitch) {
+        return submit(c -> { c.setAllDigitalOutputs(stateSwitch); return null; });
+    }
+
+    public CompletableFuture<Void> setBlockConnection(int block, int connectionSwitch) {
+        return submit(c -> { c.setBlockConnection(block, connectionSwitch); return null; });
+    }
+
+    public CompletableFuture<Integer> getBlockConnection(int block) {
+        return submit(c -> c.getBlockConnection(block));
+    }
+
+    public CompletableFuture<Void> setLogicalLevelDigitalOutput(int digitalOutput, int logicalLevel) {
+        return submit(c -> { c.setLogicalLevelDigitalOutput(digitalOutput, logicalLevel); return null; });
+    }
+
+    public CompletableFuture<Integer> getLogicalLevelDigitalOutput(int digitalOutput) {
+        return submit(c -> c.getLogicalLevelDigitalOutput(digitalOutput));
+    }
+
+    public CompletableFuture<Void> setByteDigitalOutputBlock(int digitalOutputBlock, int byteValue) {
+        return submit(c -> { c.setByteDigitalOutputBlock(digitalOutputBlock, byteValue); return null; });
+    }
+
+    public CompletableFuture<Integer> getByteDigitalOutputBlock(int digitalOutputBlock) {
+        return submit(c -> c.getByteDigitalOutputBlock(digitalOutputBlock));
+    }
+
+    public CompletableFuture<Integer> getByteDigitalInputBlock(int digitalInputBlock) {
+        return submit(c -> c.getByteDigitalInputBlock(digitalInputBlock));
+    }
+
+    public CompletableFuture<Integer> getLogicalLevelDigitalInput(int digitalInput) {
+        return submit(c -> c.getLogicalLevelDigitalInput(digitalInput));
+    }
+
+    public CompletableFuture<Void> setVoltageAnalogOutput(int analogOutput, int voltage) {
+        return submit(c -> { c.setVoltageAnalogOutput(analogOutput, voltage); return null; });
+    }
+
+    public CompletableFuture<Double> getVoltageAnalogOutput(int analogOutput) {
+        return submit(c -> c.getVoltageAnalogOutput(analogOutput));
+    }
+
+    public CompletableFuture<Double> getVoltageAnalogInput(int analogInput) {
+        return submit(c -> c.getVoltageAnalogInput(analogInput));
+    }
+
+    /**
+     Execute the queued commands and stop the I/O thread, commands submitted afterwards are rejected
+     */
+    @Override
+    public void close() {
+        // a submitter that is blocked on a full queue holds the read lock until the I/O thread makes room
+        closeLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        IORequest<?> request;
+        while ((request = queue.poll()) != null) {
+            request.future.completeExceptionally(new RejectedExecutionException("AsyncIOController closed"));
+        }
+    }
+
+    private void run() {
+        while (running || !queue.isEmpty()) {
+            IORequest<?> request;
+            try {
+                request = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (request != null) {
+                executeBatch(request);
+            }
+        }
+        LOG.info("AsyncIOController stopped");
+    }
+
+    /**
+     Execute a request and the requests queued behind it in one session
+     */
+    private void executeBatch(IORequest<?> first) {
+        synchronized (io) {
+            try (IOSession session = io.openSession()) {
+                IORequest<?> request = first;
+                int executed = 0;
+                while (request != null) {
+                    request.execute(session);
+                    if (++executed == MAX_BATCH) {
+                        break;
+                    }
+                    request = queue.poll();
+                }
+            } catch (SerialPortException | RuntimeException e) {
+                // the session could not be opened or closed, failed requests are already completed
+                first.future.completeExceptionally(e);
+                LOG.info(() -> "Command batch failed : "+e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncIOController{"+
+                "ioAddress="+io.getIoAddress()+
+                ", queueSize="+queue.size()+
+                ", overflowPolicy="+overflowPolicy+
+                '}';
+    }
+}
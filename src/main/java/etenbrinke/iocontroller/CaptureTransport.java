@@ -0,0 +1,211 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+
+public class CaptureTransport implements SerialTransport, AutoCloseable {
+
+    static final int MAGIC = 0x494F4350; // IOCP
+    static final int VERSION = 1;
+    static final int WRITTEN = 0;
+    static final int READ = 1;
+    private static final Logger LOG = Logger.getGlobal();
+    private final SerialTransport delegate;
+    private final Path file;
+    private final DataOutputStream out;
+    private long lastNanos;
+    private long eventCount;
+    private boolean failed;
+
+    /**
+     Transport that passes everything to another transport and captures every byte written and read,
+     with its time, to a binary file that ReplayTransport plays back
+     Every write or read is one event: direction byte, nanoseconds since the previous event and byte count
+     as variable length numbers, followed by the bytes
+     @param delegate transport to the controller, e.g. a JsscSerialTransport
+     @param file capture file, overwritten when it exists
+     @throws IOException when the capture file cannot be created
+     */
+    public CaptureTransport(SerialTransport delegate, Path file) throws IOException {
+        this.delegate = delegate;
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(delegate.getPortName());
+        lastNanos = System.nanoTime();
+    }
+
+    @Override
+    public String getPortName() {
+        return delegate.getPortName();
+    }
+
+    @Override
+    public boolean isOpened() {
+        return delegate.isOpened();
+    }
+
+    @Override
+    public void openPort() throws SerialPortException {
+        delegate.openPort();
+    }
+
+    @Override
+    public void setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException {
+        delegate.setParams(baudRate, dataBits, stopBits, parity);
+    }
+
+    /**
+     Close the port and write the captured events to the file, the file stays open until close()
+     */
+    @Override
+    public void closePort() throws SerialPortException {
+        try {
+            delegate.closePort();
+        } finally {
+            synchronized (this) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void writeBytes(byte[] buffer) throws SerialPortException {
+        capture(WRITTEN, buffer, 0, buffer.length);
+        delegate.writeBytes(buffer);
+    }
+
+    @Override
+    public void writeByte(byte singleByte) throws SerialPortException {
+        capture(WRITTEN, new byte[]{singleByte}, 0, 1);
+        delegate.writeByte(singleByte);
+    }
+
+    @Override
+    public void writeInt(int singleInt) throws SerialPortException {
+        capture(WRITTEN, new byte[]{(byte) singleInt}, 0, 1);
+        delegate.writeInt(singleInt);
+    }
+
+    @Override
+    public void writeString(String string) throws SerialPortException {
+        byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+        capture(WRITTEN, bytes, 0, bytes.length);
+        delegate.writeString(string);
+    }
+
+    @Override
+    public byte[] readBytes(int byteCount) throws SerialPortException {
+        byte[] bytes = delegate.readBytes(byteCount);
+        capture(READ, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public byte[] readBytes(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        byte[] bytes = delegate.readBytes(byteCount, timeout);
+        capture(READ, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public String readString(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        String string = delegate.readString(byteCount, timeout);
+        byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+        capture(READ, bytes, 0, bytes.length);
+        return string;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        int count = delegate.read(buffer, offset, length, timeout);
+        capture(READ, buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public int getInputBufferBytesCount() throws SerialPortException {
+        return delegate.getInputBufferBytesCount();
+    }
+
+    /**
+     @return number of writes and reads captured
+     */
+    public synchronized long getEventCount() {
+        return eventCount;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     Write the captured events and close the capture file, the port is left as is
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            fail(e);
+        }
+        failed = true;
+    }
+
+    private synchronized void capture(int direction, byte[] bytes, int offset, int length) {
+        if (failed) {
+            return;
+        }
+        long now = System.nanoTime();
+        try {
+            out.writeByte(direction);
+            writeVarLong(out, now - lastNanos);
+            writeVarLong(out, length);
+            out.write(bytes, offset, length);
+            lastNanos = now;
+            eventCount++;
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     Stop capturing, the port keeps working without capture
+     */
+    private void fail(IOException e) {
+        if (!failed) {
+            failed = true;
+            LOG.info(() -> "Capture to "+file+" stopped : "+e.getMessage());
+        }
+    }
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureTransport{"+
+                "portName='"+delegate.getPortName()+'\''+
+                ", file="+file+
+                '}';
+    }
+}
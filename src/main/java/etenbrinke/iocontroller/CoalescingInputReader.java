@@ -0,0 +1,229 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+public class CoalescingInputReader {
+
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+    private final long maxStalenessNanos;
+    private final Slot<Integer>[] blocks;
+    private final Slot<Double>[] analogInputs;
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     Thread-safe reader of the inputs of a controller that lets concurrent callers share reads
+     Every digital input block and every analog input is read by one caller at a time, callers that ask for
+     the same block or input meanwhile wait for that read and get its result. Digital input reads are served
+     by a read of their block, so callers of the 8 inputs of a block share one f command.
+     A result is reused until it is older than the staleness bound, measured from the start of its read
+     The reader locks the controller, other threads using it concurrently have to synchronize on it as well
+     @param io controller, the serial port must be opened
+     @param maxStalenessMillis maximum age of a result that is reused, 0 to only share reads that are in flight
+     */
+    @SuppressWarnings("unchecked")
+    public CoalescingInputReader(IOControllerImpl io, long maxStalenessMillis) {
+        this.io = io;
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxStalenessMillis));
+        blocks = (Slot<Integer>[]) new CoalescingInputReader.Slot<?>[4];
+        for (int block = 0; block < blocks.length; block++) {
+            int digitalInputBlock = block;
+            blocks[block] = new Slot<>(c -> c.getByteDigitalInputBlock(digitalInputBlock));
+        }
+        analogInputs = (Slot<Double>[]) new CoalescingInputReader.Slot<?>[8];
+        for (int analogInput = 0; analogInput < analogInputs.length; analogInput++) {
+            int channel = analogInput;
+            analogInputs[analogInput] = new Slot<>(c -> c.getVoltageAnalogInput(channel));
+        }
+    }
+
+    /**
+     Get byte on digital input block (8 inputs)
+     @param digitalInputBlock number 0-3
+     @return byte value 0-255, -1 parameter out of range
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading from the controller
+     */
+    public int getByteDigitalInputBlock(int digitalInputBlock) throws SerialPortException, SerialPortTimeoutException {
+        if (digitalInputBlock >= 0 && digitalInputBlock <= 3) {
+            return blocks[digitalInputBlock].get();
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     Get logical level on digital input, from a read of its block
+     @param digitalInput number 0-31
+     @return logical level 0 or 1, -1 parameter out of range
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading from the controller
+     */
+    public int getLogicalLevelDigitalInput(int digitalInput) throws SerialPortException, SerialPortTimeoutException {
+        if (digitalInput >= 0 && digitalInput <= 31) {
+            return (blocks[digitalInput >>> 3].get() >>> (digitalInput & 7)) & 1;
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     Get voltage on analog input
+     @param analogInput number 0-7
+     @return voltage in V 0-10.23, -1 parameter out of range
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading from the controller
+     */
+    public double getVoltageAnalogInput(int analogInput) throws SerialPortException, SerialPortTimeoutException {
+        if (analogInput >= 0 && analogInput <= 7) {
+            return analogInputs[analogInput].get();
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     Forget the results that are kept for reuse, reads in flight are still shared
+     */
+    public void invalidate() {
+        for (Slot<?> slot : blocks) {
+            slot.invalidate();
+        }
+        for (Slot<?> slot : analogInputs) {
+            slot.invalidate();
+        }
+    }
+
+    /**
+     @return number of reads sent to the controller
+     */
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     @return number of calls served by the read of another caller
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getMaxStalenessMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxStalenessNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingInputReader{"+
+                "ioAddress="+io.getIoAddress()+
+                ", maxStalenessMillis="+getMaxStalenessMillis()+
+                '}';
+    }
+
+    /**
+     Single flight of one read, with the result of the last read
+     */
+    private final class Slot<T> {
+        final IOTask<T> read;
+        CompletableFuture<T> flight;
+        long flightNanos;
+        T value;
+        long valueNanos;
+        boolean valid;
+
+        Slot(IOTask<T> read) {
+            this.read = read;
+        }
+
+        /**
+         Reuse a fresh result, join a read that started recently enough or read it, whichever comes first
+         A read that started before the staleness bound is waited for, after which a new read is needed
+         */
+        T get() throws SerialPortException, SerialPortTimeoutException {
+            long called = System.nanoTime();
+            while (true) {
+                CompletableFuture<T> joined;
+                long joinedNanos;
+                boolean leader = false;
+                synchronized (this) {
+                    long now = System.nanoTime();
+                    if (valid && now - valueNanos <= maxStalenessNanos) {
+                        coalescedCount.incrementAndGet();
+                        return value;
+                    }
+                    if (flight == null) {
+                        flight = new CompletableFuture<>();
+                        flightNanos = now;
+                        leader = true;
+                    }
+                    joined = flight;
+                    joinedNanos = flightNanos;
+                }
+                if (leader) {
+                    return lead(joined, joinedNanos);
+                }
+                T result = await(joined);
+                if (joinedNanos - called >= -maxStalenessNanos) {
+                    coalescedCount.incrementAndGet();
+                    return result;
+                }
+            }
+        }
+
+        private T lead(CompletableFuture<T> own, long start) throws SerialPortException, SerialPortTimeoutException {
+            T result;
+            try {
+                readCount.incrementAndGet();
+                synchronized (io) {
+                    try (IOSession session = io.openSession()) {
+                        result = read.execute(session);
+                    }
+                }
+            } catch (SerialPortException | SerialPortTimeoutException | RuntimeException e) {
+                synchronized (this) {
+                    flight = null;
+                }
+                own.completeExceptionally(e);
+                throw e;
+            }
+            synchronized (this) {
+                flight = null;
+                value = result;
+                valueNanos = start;
+                valid = true;
+            }
+            own.complete(result);
+            return result;
+        }
+
+        private T await(CompletableFuture<T> joined) throws SerialPortException, SerialPortTimeoutException {
+            try {
+                return joined.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SerialPortTimeoutException) {
+                    throw (SerialPortTimeoutException) cause;
+                }
+                if (cause instanceof SerialPortException) {
+                    throw (SerialPortException) cause;
+                }
+                throw new IllegalStateException(cause);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new SerialPortException(io.getSerialDevice(), "read()", SerialPortException.TYPE_LISTENER_THREAD_INTERRUPTED);
+            }
+        }
+
+        synchronized void invalidate() {
+            valid = false;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package etenbrinke.iocontroller;
+
+import java.nio.charset.StandardCharsets;
+
+final class CommandEncoder {
+
+    static final byte CR = 0x0D;
+    static final byte CANCEL = 0x18;
+    static final byte[] READY_REQUEST = {0};
+    private static final byte[] LOCAL_ON = frame("L");
+    private static final byte[] LOCAL_OFF = frame("N");
+    private static final byte[] ECHO_ON = frame("X");
+    private static final byte[] ECHO_OFF = frame("Y");
+    private static final byte[] ALL_HIGH = frame("D");
+    private static final byte[] ALL_LOW = frame("C");
+    private static final byte[][] CONNECT = table("G", 4);
+    private static final byte[][] DISCONNECT = table("H", 4);
+    private static final byte[][] GET_CONNECTION = table("g", 4);
+    private static final byte[][] SET_OUTPUT = table("A", 32, 2);
+    private static final byte[][] GET_OUTPUT = table("a", 32);
+    private static final byte[][] SET_OUTPUT_BLOCK = table("B", 4, 256);
+    private static final byte[][] GET_OUTPUT_BLOCK = table("b", 4);
+    private static final byte[][] GET_INPUT_BLOCK = table("f", 4);
+    private static final byte[][] GET_INPUT = table("e", 32);
+    private static final byte[][] SET_ANALOG_OUTPUT = table("U", 4, 1024);
+    private static final byte[][] GET_ANALOG_OUTPUT = table("u", 4);
+    private static final byte[][] GET_ANALOG_INPUT = table("v", 8);
+
+    private CommandEncoder() {
+    }
+
+    /**
+     Complete command frames are encoded once, so sending a command does not allocate
+     and goes out in one write. The address frames belong to one device address
+     */
+    static byte[] select(int ioAddress) {
+        return new byte[]{(byte) ioAddress, 0};
+    }
+
+    static byte[] deselect(int ioAddress) {
+        return new byte[]{(byte) (ioAddress + 1)};
+    }
+
+    static byte[] reset(int ioAddress) {
+        return new byte[]{(byte) ioAddress, CANCEL, 'R', CR};
+    }
+
+    static byte[] setLocalMode(int localSwitch) {
+        return localSwitch == 1 ? LOCAL_ON : LOCAL_OFF;
+    }
+
+    static byte[] setEchoMode(int echoSwitch) {
+        return echoSwitch == 1 ? ECHO_ON : ECHO_OFF;
+    }
+
+    static byte[] setAllDigitalOutputs(int stateSwitch) {
+        return stateSwitch == 1 ? ALL_HIGH : ALL_LOW;
+    }
+
+    static byte[] setBlockConnection(int block, int connectionSwitch) {
+        return connectionSwitch == 1 ? CONNECT[block] : DISCONNECT[block];
+    }
+
+    static byte[] getBlockConnection(int block) {
+        return GET_CONNECTION[block];
+    }
+
+    static byte[] setLogicalLevelDigitalOutput(int digitalOutput, int logicalLevel) {
+        return SET_OUTPUT[digitalOutput * 2 + logicalLevel];
+    }
+
+    static byte[] getLogicalLevelDigitalOutput(int digitalOutput) {
+        return GET_OUTPUT[digitalOutput];
+    }
+
+    static byte[] setByteDigitalOutputBlock(int digitalOutputBlock, int byteValue) {
+        return SET_OUTPUT_BLOCK[digitalOutputBlock * 256 + byteValue];
+    }
+
+    static byte[] getByteDigitalOutputBlock(int digitalOutputBlock) {
+        return GET_OUTPUT_BLOCK[digitalOutputBlock];
+    }
+
+    static byte[] getByteDigitalInputBlock(int digitalInputBlock) {
+        return GET_INPUT_BLOCK[digitalInputBlock];
+    }
+
+    static byte[] getLogicalLevelDigitalInput(int digitalInput) {
+        return GET_INPUT[digitalInput];
+    }
+
+    static byte[] setVoltageAnalogOutput(int analogOutput, int voltage) {
+        return SET_ANALOG_OUTPUT[analogOutput * 1024 + voltage];
+    }
+
+    static byte[] getVoltageAnalogOutput(int analogOutput) {
+        return GET_ANALOG_OUTPUT[analogOutput];
+    }
+
+    static byte[] getVoltageAnalogInput(int analogInput) {
+        return GET_ANALOG_INPUT[analogInput];
+    }
+
+    /**
+     Frames "commandN" + CR for N in 0..count-1
+     */
+    private static byte[][] table(String command, int count) {
+        byte[][] frames = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            frames[i] = frame(command+i);
+        }
+        return frames;
+    }
+
+    /**
+     Frames "commandN,M" + CR for N in 0..count-1 and M in 0..values-1, indexed N*values+M
+     */
+    private static byte[][] table(String command, int count, int values) {
+        byte[][] frames = new byte[count * values][];
+        for (int i = 0; i < count; i++) {
+            for (int value = 0; value < values; value++) {
+                frames[i * values + value] = frame(command+i+","+value);
+            }
+        }
+        return frames;
+    }
+
+    private static byte[] frame(String command) {
+        byte[] chars = command.getBytes(StandardCharsets.US_ASCII);
+        byte[] frame = new byte[chars.length + 1];
+        System.arraycopy(chars, 0, frame, 0, chars.length);
+        frame[chars.length] = CR;
+        return frame;
+    }
+}
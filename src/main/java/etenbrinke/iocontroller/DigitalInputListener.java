@@ -0,0 +1,11 @@
+package etenbrinke.iocontroller;
+
+public interface DigitalInputListener {
+    /**
+     Called on the scanner thread for every edge on a digital input
+     @param digitalInput number 0-31
+     @param logicalLevel new logical level, 1 on a rising edge, 0 on a falling edge
+     @param timestampNanos System.nanoTime() when the scan that saw the edge completed
+     */
+    void digitalInputChanged(int digitalInput, int logicalLevel, long timestampNanos);
+}
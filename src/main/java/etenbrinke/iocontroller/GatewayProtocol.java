@@ -0,0 +1,80 @@
+package etenbrinke.iocontroller;
+
+import java.nio.ByteBuffer;
+
+final class GatewayProtocol {
+
+    /**
+     Request frame, client to gateway : opcode byte, channel byte, value short, request id int
+     */
+    static final int REQUEST_SIZE = 8;
+    /**
+     Frame from gateway to client : kind byte, channel byte, request id int, value int
+     */
+    static final int FRAME_SIZE = 10;
+
+    // opcodes, one per controller command
+    static final int RESET_CONTROLLER = 1;
+    static final int SET_LOCAL_MODE = 2;
+    static final int SET_ECHO_MODE = 3;
+    static final int SET_ALL_DIGITAL_OUTPUTS = 4;
+    static final int SET_BLOCK_CONNECTION = 5;
+    static final int GET_BLOCK_CONNECTION = 6;
+    static final int SET_LOGICAL_LEVEL_DIGITAL_OUTPUT = 7;
+    static final int GET_LOGICAL_LEVEL_DIGITAL_OUTPUT = 8;
+    static final int SET_BYTE_DIGITAL_OUTPUT_BLOCK = 9;
+    static final int GET_BYTE_DIGITAL_OUTPUT_BLOCK = 10;
+    static final int GET_BYTE_DIGITAL_INPUT_BLOCK = 11;
+    static final int GET_LOGICAL_LEVEL_DIGITAL_INPUT = 12;
+    static final int SET_VOLTAGE_ANALOG_OUTPUT = 13;
+    static final int GET_VOLTAGE_ANALOG_OUTPUT = 14;
+    static final int GET_VOLTAGE_ANALOG_INPUT = 15;
+    // opcodes of the gateway itself
+    static final int INFO = 32;
+    static final int SUBSCRIBE = 33;
+    static final int UNSUBSCRIBE = 34;
+
+    // frame kinds
+    static final int OK = 0;
+    static final int FAILED = 1;
+    static final int TIMEOUT = 2;
+    static final int REJECTED = 3;
+    static final int EVENT = 4;
+
+    /**
+     Channel sent for a parameter that does not fit in a byte, the controller rejects it as out of range
+     */
+    private static final int NO_CHANNEL = 0xFF;
+
+    private GatewayProtocol() {
+    }
+
+    static void putRequest(ByteBuffer buffer, int opcode, int channel, int value, int id) {
+        buffer.put((byte) opcode);
+        buffer.put((byte) (channel >= 0 && channel < NO_CHANNEL ? channel : NO_CHANNEL));
+        buffer.putShort((short) (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE ? value : -1));
+        buffer.putInt(id);
+    }
+
+    static void putFrame(ByteBuffer buffer, int kind, int channel, int id, int value) {
+        buffer.put((byte) kind);
+        buffer.put((byte) channel);
+        buffer.putInt(id);
+        buffer.putInt(value);
+    }
+
+    /**
+     @return channel of a request, -1 for a parameter that did not fit
+     */
+    static int channel(byte channel) {
+        int value = channel & 0xFF;
+        return value == NO_CHANNEL ? -1 : value;
+    }
+
+    /**
+     Voltages travel as hundredths of a volt
+     */
+    static int hundredths(double voltage) {
+        return (int) Math.round(voltage * 100);
+    }
+}
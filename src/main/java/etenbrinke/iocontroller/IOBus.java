@@ -0,0 +1,329 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPort;
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+public class IOBus implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    private static final int[] ADDRESSES = {144, 146, 148, 150};
+    private static final int MAX_GROUP = 16;
+    private static final Logger LOG = Logger.getGlobal();
+    private final SerialTransport transport;
+    private final int queueCapacity;
+    private final Handle[] handles = new Handle[ADDRESSES.length];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition spaceAvailable = lock.newCondition();
+    private int nextHandle;
+    private volatile boolean running;
+    private Thread thread;
+    private long addressSwitches;
+
+    public IOBus(String serialDevice) {
+        this(new JsscSerialTransport(serialDevice), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     Bus manager for up to four controllers on the device addresses 144,146,148,150 of one serial line
+     The bus owns the serial port, one bus thread executes the commands of all controllers.
+     Controllers with queued commands get their turn round robin, up to 16 consecutive commands
+     of one controller are executed in one session to save the select and deselect switches
+     @param transport serial transport of the line
+     @param queueCapacity maximum number of queued commands per controller, callers wait while it is full
+     */
+    public IOBus(SerialTransport transport, int queueCapacity) {
+        this.transport = transport;
+        this.queueCapacity = queueCapacity;
+        for (int i = 0; i < ADDRESSES.length; i++) {
+            handles[i] = new Handle(new IOControllerImpl(transport, ADDRESSES[i]));
+        }
+    }
+
+    /**
+     Open the serial port and start the bus thread
+     @throws SerialPortException exception that might occur in Serial interface
+     */
+    public synchronized void open() throws SerialPortException {
+        if (running) {
+            return;
+        }
+        transport.openPort();
+        transport.setParams(SerialPort.BAUDRATE_9600, SerialPort.DATABITS_8, SerialPort.STOPBITS_2, SerialPort.PARITY_NONE);
+        for (Handle handle : handles) {
+            handle.io.openSerialPort();
+        }
+        running = true;
+        thread = new Thread(this::run, "IOBus-"+transport.getPortName());
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info(() -> "Bus opened on "+transport.getPortName());
+    }
+
+    /**
+     Controller handle on a device address. Commands through the handle are queued on the bus
+     @param ioAddress device address 144,146,148,150
+     @return controller handle, null parameter out of range
+     */
+    public Handle getController(int ioAddress) {
+        for (Handle handle : handles) {
+            if (handle.io.getIoAddress() == ioAddress) {
+                return handle;
+            }
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return null;
+    }
+
+    /**
+     @return number of times the bus switched from one controller to another
+     */
+    public long getAddressSwitches() {
+        lock.lock();
+        try {
+            return addressSwitches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     Execute the queued commands, stop the bus thread and close the serial port
+     @throws SerialPortException exception that might occur in Serial interface
+     */
+    @Override
+    public synchronized void close() throws SerialPortException {
+        if (!running) {
+            return;
+        }
+        lock.lock();
+        try {
+            running = false;
+            workAvailable.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        transport.closePort();
+        LOG.info(() -> "Bus closed on "+transport.getPortName());
+    }
+
+    private <T> CompletableFuture<T> enqueue(Handle handle, IOTask<T> task) {
+        IORequest<T> request = new IORequest<>(task);
+        lock.lock();
+        try {
+            while (running && handle.queue.size() >= queueCapacity) {
+                spaceAvailable.awaitUninterruptibly();
+            }
+            if (!running) {
+                request.future.completeExceptionally(new RejectedExecutionException("IOBus not open"));
+                return request.future;
+            }
+            handle.queue.add(request);
+            workAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return request.future;
+    }
+
+    private void run() {
+        Handle previous = null;
+        while (true) {
+            Handle handle;
+            IORequest<?>[] group;
+            lock.lock();
+            try {
+                while ((handle = nextWithWork()) == null) {
+                    if (!running) {
+                        LOG.info("Bus thread stopped");
+                        return;
+                    }
+                    workAvailable.await(100, TimeUnit.MILLISECONDS);
+                }
+                group = new IORequest<?>[Math.min(handle.queue.size(), MAX_GROUP)];
+                for (int i = 0; i < group.length; i++) {
+                    group[i] = handle.queue.poll();
+                }
+                if (handle != previous) {
+                    addressSwitches++;
+                }
+                spaceAvailable.signalAll();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            previous = handle;
+            execute(handle, group);
+        }
+    }
+
+    /**
+     Next controller with queued commands, round robin starting after the last served controller
+     */
+    private Handle nextWithWork() {
+        for (int i = 0; i < handles.length; i++) {
+            Handle handle = handles[(nextHandle + i) % handles.length];
+            if (!handle.queue.isEmpty()) {
+                nextHandle = (nextHandle + i + 1) % handles.length;
+                return handle;
+            }
+        }
+        return null;
+    }
+
+    private void execute(Handle handle, IORequest<?>[] group) {
+        synchronized (handle.io) {
+            try (IOSession session = handle.io.openSession()) {
+                for (IORequest<?> request : group) {
+                    request.execute(session);
+                }
+            } catch (SerialPortException e) {
+                for (IORequest<?> request : group) {
+                    request.future.completeExceptionally(e);
+                }
+                LOG.info(() -> "Command group on device address "+handle.io.getIoAddress()+" failed : "+e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IOBus{"+
+                "portName='"+transport.getPortName()+'\''+
+                ", running="+running+
+                '}';
+    }
+
+    /**
+     Controller on one device address of the bus
+     */
+    public final class Handle implements IOCommands, IOExecutor {
+        private final IOControllerImpl io;
+        private final ArrayDeque<IORequest<?>> queue = new ArrayDeque<>();
+
+        private Handle(IOControllerImpl io) {
+            this.io = io;
+        }
+
+        public int getIoAddress() {
+            return io.getIoAddress();
+        }
+
+        /**
+         Queue a task on the bus
+         @param task commands to run on this controller in one session
+         @return future completed with the result of the task or the exception it threw
+         */
+        @Override
+        public <T> CompletableFuture<T> submit(IOTask<T> task) {
+            return enqueue(this, task);
+        }
+
+        private <T> T call(IOTask<T> task) throws SerialPortException, SerialPortTimeoutException {
+            return IORequest.await(submit(task), transport.getPortName());
+        }
+
+        private void write(IOTask<Void> task) throws SerialPortException {
+            IORequest.awaitWrite(submit(task), transport.getPortName());
+        }
+
+        @Override
+        public void resetController() throws SerialPortException {
+            write(c -> { c.resetController(); return null; });
+        }
+
+        @Override
+        public void setLocalMode(int localSwitch) throws SerialPortException {
+            write(c -> { c.setLocalMode(localSwitch); return null; });
+        }
+
+        @Override
+        public void setEchoMode(int echoSwitch) throws SerialPortException {
+            write(c -> { c.setEchoMode(echoSwitch); return null; });
+        }
+
+        @Override
+        public void setAllDigitalOutputs(int stateSwitch) throws SerialPortException {
+            write(c -> { c.setAllDigitalOutputs(stateSwitch); return null; });
+        }
+
+        @Override
+        public void setBlockConnection(int block, int connectionSwitch) throws SerialPortException {
+            write(c -> { c.setBlockConnection(block, connectionSwitch); return null; });
+        }
+
+        @Override
+        public int getBlockConnection(int block) throws SerialPortException, SerialPortTimeoutException {
+            return call(c -> c.getBlockConnection(block));
+        }
+
+        @Override
+        public void setLogicalLevelDigitalOutput(int digitalOutput, int logicalLevel) throws SerialPortException {
+            write(c -> { c.setLogicalLevelDigitalOutput(digitalOutput, logicalLevel); return null; });
+        }
+
+        @Override
+        public int getLogicalLevelDigitalOutput(int digitalOutput) throws SerialPortException, SerialPortTimeoutException {
+            return call(c -> c.getLogicalLevelDigitalOutput(digitalOutput));
+        }
+
+        @Override
+        public void setByteDigitalOutputBlock(int digitalOutputBlock, int byteValue) throws SerialPortException {
+            write(c -> { c.setByteDigitalOutputBlock(digitalOutputBlock, byteValue); return null; });
+        }
+
+        @Override
+        public int getByteDigitalOutputBlock(int digitalOutputBlock) throws SerialPortException, SerialPortTimeoutException {
+            return call(c -> c.getByteDigitalOutputBlock(digitalOutputBlock));
+        }
+
+        @Override
+        public int getByteDigitalInputBlock(int digitalInputBlock) throws SerialPortException, SerialPortTimeoutException {
+            return call(c -> c.getByteDigitalInputBlock(digitalInputBlock));
+        }
+
+        @Override
+        public int getLogicalLevelDigitalInput(int digitalInput) throws SerialPortException, SerialPortTimeoutException {
+            return call(c -> c.getLogicalLevelDigitalInput(digitalInput));
+        }
+
+        @Override
+        public void setVoltageAnalogOutput(int analogOutput, int voltage) throws SerialPortException {
+            write(c -> { c.setVoltageAnalogOutput(analogOutput, voltage); return null; });
+        }
+
+        @Override
+        public double getVoltageAnalogOutput(int analogOutput) throws SerialPortException, SerialPortTimeoutException {
+            return call(c -> c.getVoltageAnalogOutput(analogOutput));
+        }
+
+        @Override
+        public double getVoltageAnalogInput(int analogInput) throws SerialPortException, SerialPortTimeoutException {
+            return call(c -> c.getVoltageAnalogInput(analogInput));
+        }
+
+        @Override
+        public String toString() {
+            return "IOBus.Handle{"+
+                    "ioAddress="+io.getIoAddress()+
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+public interface IOCommands {
+    void resetController() throws SerialPortException;
+
+    void setLocalMode(int localSwitch) throws SerialPortException;
+
+    void setEchoMode(int echoSwitch) throws SerialPortException;
+
+    void setAllDigitalOutputs(int stateSwitch) throws SerialPortException;
+
+    void setBlockConnection(int block, int connectionSwitch) throws SerialPortException;
+
+    int getBlockConnection(int block) throws SerialPortException, SerialPortTimeoutException;
+
+    void setLogicalLevelDigitalOutput(int digitalOutput, int logicalLevel) throws SerialPortException;
+
+    int getLogicalLevelDigitalOutput(int digitalOutput) throws SerialPortException, SerialPortTimeoutException;
+
+    void setByteDigitalOutputBlock(int digitalOutputBlock, int byteValue) throws SerialPortException;
+
+    int getByteDigitalOutputBlock(int digitalOutputBlock) throws SerialPortException, SerialPortTimeoutException;
+
+    int getByteDigitalInputBlock(int digitalInputBlock) throws SerialPortException, SerialPortTimeoutException;
+
+    int getLogicalLevelDigitalInput(int digitalInput) throws SerialPortException, SerialPortTimeoutException;
+
+    void setVoltageAnalogOutput(int analogOutput, int voltage) throws SerialPortException;
+
+    double getVoltageAnalogOutput(int analogOutput) throws SerialPortException, SerialPortTimeoutException;
+
+    double getVoltageAnalogInput(int analogInput) throws SerialPortException, SerialPortTimeoutException;
+}
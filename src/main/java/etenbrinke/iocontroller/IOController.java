@@ -1,13 +1,12 @@
 package etenbrinke.iocontroller;
 
 import jssc.SerialPortException;
-import jssc.SerialPortTimeoutException;
 
 /**
  * Created by etenbrinke on 05/12/15.
  */
 
-public interface IOController {
+public interface IOController extends IOCommands {
     String getSerialDevice();
 
     void setSerialDevice(String serialDevice);
@@ -19,34 +18,4 @@ public interface IOController {
     void openSerialPort();
 
     void closeSerialPort() throws SerialPortException;
-
-    void resetController() throws SerialPortException;
-
-    void setLocalMode(int localSwitch) throws SerialPortException;
-
-    void setEchoMode(int echoSwitch) throws SerialPortException;
-
-    void setAllDigitalOutputs(int stateSwitch) throws SerialPortException;
-
-    void setBlockConnection(int block, int connectionSwitch) throws SerialPortException;
-
-    int getBlockConnection(int block) throws SerialPortException, SerialPortTimeoutException;
-
-    void setLogicalLevelDigitalOutput(int digitalOutput, int logicalLevel) throws SerialPortException;
-
-    int getLogicalLevelDigitalOutput(int digitalOutput) throws SerialPortException, SerialPortTimeoutException;
-
-    void setByteDigitalOutputBlock(int digitalOutputBlock, int byteValue) throws SerialPortException;
-
-    int getByteDigitalOutputBlock(int digitalOutputBlock) throws SerialPortException, SerialPortTimeoutException;
-
-    int getByteDigitalInputBlock(int digitalInputBlock) throws SerialPortException, SerialPortTimeoutException;
-
-    int getLogicalLevelDigitalInput(int digitalInput) throws SerialPortException, SerialPortTimeoutException;
-
-    void setVoltageAnalogOutput(int analogOutput, int voltage) throws SerialPortException;
-
-    double getVoltageAnalogOutput(int analogOutput) throws SerialPortException, SerialPortTimeoutException;
-
-    double getVoltageAnalogInput(int analogInput) throws SerialPortException, SerialPortTimeoutException;
 }
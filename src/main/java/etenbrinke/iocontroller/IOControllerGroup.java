@@ -0,0 +1,135 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+public class IOControllerGroup implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getGlobal();
+    private final List<IOExecutor> executors = new CopyOnWriteArrayList<>();
+    private final List<AsyncIOController> owned = new CopyOnWriteArrayList<>();
+
+    /**
+     Group of controllers on different serial ports. Every port has its own I/O thread,
+     so broadcast operations run on all ports in parallel and take as long as the slowest port
+     */
+    public IOControllerGroup() {
+    }
+
+    /**
+     Add a controller on its own serial port, the group starts an I/O thread for it
+     @param io controller, the serial port must be opened
+     @return asynchronous controller owned by the group
+     */
+    public AsyncIOController addController(IOControllerImpl io) {
+        AsyncIOController async = new AsyncIOController(io);
+        owned.add(async);
+        executors.add(async);
+        LOG.info(() -> "Controller "+io.getIoAddress()+" on "+io.getSerialDevice()+" added to group");
+        return async;
+    }
+
+    /**
+     Add a controller that already has an I/O thread, e.g. an IOBus handle
+     @param executor executor of the controller, not closed by the group
+     */
+    public void add(IOExecutor executor) {
+        executors.add(executor);
+    }
+
+    public int size() {
+        return executors.size();
+    }
+
+    /**
+     Run a task on every controller of the group at the same time
+     @param task commands to run on each controller
+     @return futures in the order the controllers were added
+     */
+    public <T> List<CompletableFuture<T>> broadcast(IOTask<T> task) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(executors.size());
+        for (IOExecutor executor : executors) {
+            futures.add(executor.submit(task));
+        }
+        return futures;
+    }
+
+    /**
+     Run a task on every controller and wait until all are done
+     @param task commands to run on each controller
+     @return results in the order the controllers were added
+     @throws SerialPortException first exception of a controller, after all controllers completed
+     @throws SerialPortTimeoutException first timeout of a controller, after all controllers completed
+     */
+    public <T> List<T> invokeAll(IOTask<T> task) throws SerialPortException, SerialPortTimeoutException {
+        List<CompletableFuture<T>> futures = broadcast(task);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+        List<T> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<T> future : futures) {
+            results.add(IORequest.await(future, "group"));
+        }
+        return results;
+    }
+
+    /**
+     Set all digital outputs of all controllers to high or low
+     Controller commands C,D
+     @param stateSwitch 1 set outputs to high, 0 to low
+     @throws SerialPortException exception that might occur in Serial interface
+     */
+    public void setAllDigitalOutputs(int stateSwitch) throws SerialPortException {
+        try {
+            invokeAll(c -> { c.setAllDigitalOutputs(stateSwitch); return null; });
+        } catch (SerialPortTimeoutException e) {
+            //writes do not read from the controller
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     Read the 32 digital inputs of all controllers
+     Controller command f
+     @return per controller digital input 0 in bit 0 up to digital input 31 in bit 31
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading from a controller
+     */
+    public int[] getDigitalInputs() throws SerialPortException, SerialPortTimeoutException {
+        List<Integer> inputs = invokeAll(c -> {
+            int scanned = 0;
+            for (int block = 0; block < 4; block++) {
+                scanned |= (c.getByteDigitalInputBlock(block) & 0xFF) << (block * 8);
+            }
+            return scanned;
+        });
+        int[] result = new int[inputs.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = inputs.get(i);
+        }
+        return result;
+    }
+
+    /**
+     Stop the I/O threads started by the group, the serial ports stay open
+     */
+    @Override
+    public void close() {
+        for (AsyncIOController async : owned) {
+            async.close();
+        }
+        owned.clear();
+        executors.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "IOControllerGroup{"+
+                "size="+executors.size()+
+                '}';
+    }
+}
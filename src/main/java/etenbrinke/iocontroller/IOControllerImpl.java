@@ -3,6 +3,9 @@ package etenbrinke.iocontroller;
 import jssc.SerialPort;
 import jssc.SerialPortException;
 import jssc.SerialPortTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -11,23 +14,68 @@ import java.util.logging.Logger;
 
 public class IOControllerImpl implements IOController {
 
-    private static final int WAIT_FOR_CONTROLLER_MS = 20;
-    private static final int READ_TIMEOUT_MS = 30000;
-    private static final String READY_STATUS = "16";
-    private static final String PARAMETER_OUT_OF_RANGE = "Parameter(s) out for range";
+    private static final int READY_TIMEOUT_MS = 2000;
+    private static final int READY_BACKOFF_MAX_MS = 16;
+    private static final byte READY_STATUS = 0x16;
+    private static final int DRIFT_LIMIT = 3;
+    static final String PARAMETER_OUT_OF_RANGE = "Parameter(s) out for range";
     private String serialDevice;
     private int ioAddress;
-    private static SerialPort serialPort;
+    private final SerialTransport transport;
+    private SerialTransport serialPort;
+    private ResponseDecoder decoder;
+    private final IOMetrics metrics = new IOMetrics(this);
+    private final byte[] statusBuffer = new byte[1];
+    private volatile IORecorder recorder;
+    private volatile TimingProfile timing = TimingProfile.defaults();
+    private int profileDrifts;
+    private volatile long driftCount;
+    private int sessionDepth;
+    private boolean outputMirror;
+    private int digitalOutputs;
+    private final int[] analogOutputs = new int[4];
+    private int digitalOutputsCommanded;
+    private int analogOutputsCommanded;
+    private int blockConnections;
+    private int blockConnectionsCommanded;
+    private int localMode = -1;
+    private int echoMode = -1;
+    private byte[] selectFrame;
+    private byte[] deselectFrame;
+    private byte[] resetFrame;
     private static final Logger LOG = Logger.getGlobal();
 
     public IOControllerImpl() {
         serialDevice = "/dev/ttyS0";
         ioAddress = 144;
+        transport = null;
+        encodeAddress();
     }
 
     public IOControllerImpl(String serialDevice, int ioAddress) {
         this.serialDevice = serialDevice;
         this.ioAddress = ioAddress;
+        transport = null;
+        encodeAddress();
+    }
+
+    /**
+     Controller on a given transport instead of a jSSC serial device,
+     e.g. an IOControllerSimulator
+     @param transport serial transport to the controller
+     @param ioAddress device address 144,146,148,150
+     */
+    public IOControllerImpl(SerialTransport transport, int ioAddress) {
+        this.serialDevice = transport.getPortName();
+        this.ioAddress = ioAddress;
+        this.transport = transport;
+        encodeAddress();
+    }
+
+    private void encodeAddress() {
+        selectFrame = CommandEncoder.select(ioAddress);
+        deselectFrame = CommandEncoder.deselect(ioAddress);
+        resetFrame = CommandEncoder.reset(ioAddress);
     }
 
     @Override
@@ -59,7 +107,8 @@ public class IOControllerImpl implements IOController {
     public void setIOAddress(int ioAddress) {
         if (ioAddress == 144 || ioAddress == 146 || ioAddress == 148 || ioAddress == 150) {
             this.ioAddress = ioAddress;
-            LOG.info("Device address set to "+ioAddress);
+            encodeAddress();
+            LOG.info(() -> "Device address set to "+ioAddress);
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
         }
@@ -67,14 +116,21 @@ public class IOControllerImpl implements IOController {
 
     /**
      Open serial port
+     The transport given at construction is used, otherwise the jSSC serial device
+     A transport that is already opened is shared as is, e.g. by controllers on one IOBus
      */
     @Override
     public void openSerialPort() {
-        serialPort = new SerialPort(serialDevice);
+        serialPort = transport != null ? transport : new JsscSerialTransport(serialDevice);
+        decoder = new ResponseDecoder(serialPort, metrics);
+        if (serialPort.isOpened()) {
+            LOG.info(() -> "Serial port shared on "+serialDevice);
+            return;
+        }
         try {
             serialPort.openPort(); //Open serial port
             serialPort.setParams(SerialPort.BAUDRATE_9600, SerialPort.DATABITS_8, SerialPort.STOPBITS_2, SerialPort.PARITY_NONE); //Set parameters
-            LOG.info("Serial port opened on "+serialDevice);
+            LOG.info(() -> "Serial port opened on "+serialDevice);
         }
         catch (SerialPortException e) {
             LOG.info(e.getMessage());
@@ -98,11 +154,11 @@ public class IOControllerImpl implements IOController {
      */
     @Override
     public void resetController() throws SerialPortException {
-        serialPort.writeInt((char) ioAddress);
-        serialPort.writeByte((byte)0x18);
-        serialPort.writeString("R");
-        serialPort.writeByte((byte)0x0D);
-        delay(WAIT_FOR_CONTROLLER_MS);
+        long start = System.nanoTime();
+        send(resetFrame);
+        resetCommandedState();
+        delay(timing.getResetWaitMs());
+        completed(IOMetrics.Command.RESET_CONTROLLER, start, -1, 0);
         LOG.info("Controller reset");
     }
 
@@ -115,17 +171,13 @@ public class IOControllerImpl implements IOController {
     @Override
     public void setLocalMode(int localSwitch) throws SerialPortException {
         if (localSwitch == 0 || localSwitch == 1) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            if (localSwitch == 1) {
-                serialPort.writeString("L");
-            } else {
-                serialPort.writeString("N");
-            }
-            serialPort.writeByte((byte)0x0D);
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Local mode set to "+localSwitch);
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.setLocalMode(localSwitch));
+            localMode = localSwitch;
+            deselect();
+            completed(IOMetrics.Command.SET_LOCAL_MODE, start, -1, localSwitch);
+            LOG.info(() -> "Local mode set to "+localSwitch);
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
         }
@@ -140,17 +192,13 @@ public class IOControllerImpl implements IOController {
     @Override
     public void setEchoMode(int echoSwitch) throws SerialPortException {
         if (echoSwitch == 0 || echoSwitch == 1) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            if (echoSwitch == 1) {
-                serialPort.writeString("X");
-            } else {
-                serialPort.writeString("Y");
-            }
-            serialPort.writeByte((byte)0x0D);
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Echo mode set to "+echoSwitch);
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.setEchoMode(echoSwitch));
+            echoMode = echoSwitch;
+            deselect();
+            completed(IOMetrics.Command.SET_ECHO_MODE, start, -1, echoSwitch);
+            LOG.info(() -> "Echo mode set to "+echoSwitch);
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
         }
@@ -165,18 +213,19 @@ public class IOControllerImpl implements IOController {
     @Override
     public void setAllDigitalOutputs(int stateSwitch) throws SerialPortException {
         if (stateSwitch == 0 || stateSwitch == 1) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            if (stateSwitch == 1) {
-                serialPort.writeString("D");
-            }
-            else {
-                serialPort.writeString("C");
+            int outputs = stateSwitch == 1 ? 0xFFFFFFFF : 0;
+            if (outputMirror && digitalOutputs == outputs) {
+                LOG.info(() -> "All digital outputs already set to "+stateSwitch);
+                return;
             }
-            serialPort.writeByte((byte)0x0D);
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("All digital outputs set to "+stateSwitch);
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.setAllDigitalOutputs(stateSwitch));
+            digitalOutputs = outputs;
+            digitalOutputsCommanded = 0xFFFFFFFF;
+            deselect();
+            completed(IOMetrics.Command.SET_ALL_DIGITAL_OUTPUTS, start, -1, stateSwitch);
+            LOG.info(() -> "All digital outputs set to "+stateSwitch);
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
         }
@@ -192,17 +241,14 @@ public class IOControllerImpl implements IOController {
     @Override
     public void setBlockConnection(int block, int connectionSwitch) throws SerialPortException {
         if ((block >= 0 && block <= 3) && (connectionSwitch == 0 || connectionSwitch == 1)) {
-         	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            if (connectionSwitch == 1) {
-                serialPort.writeString("G"+block);
-            }
-            else { serialPort.writeString("H"+block);
-            }
-            serialPort.writeByte((byte)0x0D);
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Block connection on block "+block+" set to "+connectionSwitch);
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.setBlockConnection(block, connectionSwitch));
+            blockConnections = (blockConnections & ~(1 << block)) | (connectionSwitch << block);
+            blockConnectionsCommanded |= 1 << block;
+            deselect();
+            completed(IOMetrics.Command.SET_BLOCK_CONNECTION, start, block, connectionSwitch);
+            LOG.info(() -> "Block connection on block "+block+" set to "+connectionSwitch);
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
         }
@@ -217,16 +263,15 @@ public class IOControllerImpl implements IOController {
      */
     @Override
     public int getBlockConnection(int block) throws SerialPortException, SerialPortTimeoutException {
-        LOG.info("Get block Connection on block "+block);
+        LOG.info(() -> "Get block Connection on block "+block);
         if (block >= 0 && block <= 3) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("g"+block);
-            serialPort.writeByte((byte)0x0D);
-            int connected = Integer.parseInt(serialPort.readString(2,READ_TIMEOUT_MS).trim());
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Block connection on block "+block+" is set to "+connected);
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.getBlockConnection(block));
+            int connected = readResponse(IOMetrics.Command.GET_BLOCK_CONNECTION, false);
+            deselect();
+            completed(IOMetrics.Command.GET_BLOCK_CONNECTION, start, block, connected);
+            LOG.info(() -> "Block connection on block "+block+" is set to "+connected);
             return connected;
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
@@ -244,13 +289,18 @@ public class IOControllerImpl implements IOController {
     @Override
     public void setLogicalLevelDigitalOutput(int digitalOutput, int logicalLevel) throws SerialPortException {
         if ((digitalOutput >= 0 && digitalOutput <= 31) && (logicalLevel == 0 || logicalLevel == 1)) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("A"+digitalOutput+","+logicalLevel);
-            serialPort.writeByte((byte)0x0D);
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Logical level "+logicalLevel+" set on digital output "+digitalOutput);
+            if (outputMirror && ((digitalOutputs >>> digitalOutput) & 1) == logicalLevel) {
+                LOG.info(() -> "Logical level "+logicalLevel+" already set on digital output "+digitalOutput);
+                return;
+            }
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.setLogicalLevelDigitalOutput(digitalOutput, logicalLevel));
+            digitalOutputs = (digitalOutputs & ~(1 << digitalOutput)) | (logicalLevel << digitalOutput);
+            digitalOutputsCommanded |= 1 << digitalOutput;
+            deselect();
+            completed(IOMetrics.Command.SET_LOGICAL_LEVEL_DIGITAL_OUTPUT, start, digitalOutput, logicalLevel);
+            LOG.info(() -> "Logical level "+logicalLevel+" set on digital output "+digitalOutput);
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
         }
@@ -266,14 +316,18 @@ public class IOControllerImpl implements IOController {
     @Override
     public int getLogicalLevelDigitalOutput(int digitalOutput) throws SerialPortException, SerialPortTimeoutException {
         if (digitalOutput >= 0 && digitalOutput <= 31) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("a"+ digitalOutput);
-            serialPort.writeByte((byte)0x0D);
-            int logicalLevel = Integer.parseInt(serialPort.readString(2,READ_TIMEOUT_MS).trim());
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Logical level on digital output "+digitalOutput+" is "+logicalLevel);
+            if (outputMirror) {
+                int logicalLevel = (digitalOutputs >>> digitalOutput) & 1;
+                LOG.info(() -> "Logical level on digital output "+digitalOutput+" is "+logicalLevel+" (mirror)");
+                return logicalLevel;
+            }
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.getLogicalLevelDigitalOutput(digitalOutput));
+            int logicalLevel = readResponse(IOMetrics.Command.GET_LOGICAL_LEVEL_DIGITAL_OUTPUT, false);
+            deselect();
+            completed(IOMetrics.Command.GET_LOGICAL_LEVEL_DIGITAL_OUTPUT, start, digitalOutput, logicalLevel);
+            LOG.info(() -> "Logical level on digital output "+digitalOutput+" is "+logicalLevel);
             return logicalLevel;
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
@@ -291,13 +345,19 @@ public class IOControllerImpl implements IOController {
     @Override
     public void setByteDigitalOutputBlock(int digitalOutputBlock, int byteValue) throws SerialPortException {
         if ((digitalOutputBlock >= 0 && digitalOutputBlock <= 3) && (byteValue >=0 && byteValue <= 255)) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("B"+digitalOutputBlock+","+byteValue);
-            serialPort.writeByte((byte)0x0D);
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Byte value "+byteValue+" set on digital output block "+digitalOutputBlock);
+            int shift = digitalOutputBlock * 8;
+            if (outputMirror && ((digitalOutputs >>> shift) & 0xFF) == byteValue) {
+                LOG.info(() -> "Byte value "+byteValue+" already set on digital output block "+digitalOutputBlock);
+                return;
+            }
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.setByteDigitalOutputBlock(digitalOutputBlock, byteValue));
+            digitalOutputs = (digitalOutputs & ~(0xFF << shift)) | (byteValue << shift);
+            digitalOutputsCommanded |= 0xFF << shift;
+            deselect();
+            completed(IOMetrics.Command.SET_BYTE_DIGITAL_OUTPUT_BLOCK, start, digitalOutputBlock, byteValue);
+            LOG.info(() -> "Byte value "+byteValue+" set on digital output block "+digitalOutputBlock);
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
         }
@@ -313,14 +373,18 @@ public class IOControllerImpl implements IOController {
     @Override
     public int getByteDigitalOutputBlock(int digitalOutputBlock) throws SerialPortException, SerialPortTimeoutException {
         if (digitalOutputBlock >= 0 && digitalOutputBlock <= 3) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("b"+digitalOutputBlock);
-            serialPort.writeByte((byte)0x0D);
-            int byteValue = Integer.parseInt(serialPort.readString(5,READ_TIMEOUT_MS).trim());
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Byte on digital block "+digitalOutputBlock+" is "+byteValue);
+            if (outputMirror) {
+                int byteValue = (digitalOutputs >>> (digitalOutputBlock * 8)) & 0xFF;
+                LOG.info(() -> "Byte on digital block "+digitalOutputBlock+" is "+byteValue+" (mirror)");
+                return byteValue;
+            }
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.getByteDigitalOutputBlock(digitalOutputBlock));
+            int byteValue = readResponse(IOMetrics.Command.GET_BYTE_DIGITAL_OUTPUT_BLOCK, false);
+            deselect();
+            completed(IOMetrics.Command.GET_BYTE_DIGITAL_OUTPUT_BLOCK, start, digitalOutputBlock, byteValue);
+            LOG.info(() -> "Byte on digital block "+digitalOutputBlock+" is "+byteValue);
             return byteValue;
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
@@ -338,14 +402,13 @@ public class IOControllerImpl implements IOController {
     @Override
     public int getByteDigitalInputBlock(int digitalInputBlock) throws SerialPortException, SerialPortTimeoutException {
         if (digitalInputBlock >= 0 && digitalInputBlock <= 3) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("f"+ digitalInputBlock);
-            serialPort.writeByte((byte)0x0D);
-            int byteValue = Integer.parseInt(serialPort.readString(5,READ_TIMEOUT_MS).trim());
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Byte value on digital input block "+digitalInputBlock+" is "+byteValue);
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.getByteDigitalInputBlock(digitalInputBlock));
+            int byteValue = readResponse(IOMetrics.Command.GET_BYTE_DIGITAL_INPUT_BLOCK, false);
+            deselect();
+            completed(IOMetrics.Command.GET_BYTE_DIGITAL_INPUT_BLOCK, start, digitalInputBlock, byteValue);
+            LOG.info(() -> "Byte value on digital input block "+digitalInputBlock+" is "+byteValue);
             return byteValue;
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
@@ -363,14 +426,13 @@ public class IOControllerImpl implements IOController {
     @Override
     public int getLogicalLevelDigitalInput(int digitalInput) throws SerialPortException, SerialPortTimeoutException {
         if (digitalInput >= 0 && digitalInput <= 31) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("e"+ digitalInput);
-            serialPort.writeByte((byte)0x0D);
-            int logicalLevel = Integer.parseInt(serialPort.readString(2,READ_TIMEOUT_MS).trim());
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Logical level on digital input "+digitalInput+" is "+logicalLevel);
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.getLogicalLevelDigitalInput(digitalInput));
+            int logicalLevel = readResponse(IOMetrics.Command.GET_LOGICAL_LEVEL_DIGITAL_INPUT, false);
+            deselect();
+            completed(IOMetrics.Command.GET_LOGICAL_LEVEL_DIGITAL_INPUT, start, digitalInput, logicalLevel);
+            LOG.info(() -> "Logical level on digital input "+digitalInput+" is "+logicalLevel);
             return logicalLevel;
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
@@ -387,14 +449,19 @@ public class IOControllerImpl implements IOController {
      */
     @Override
     public void setVoltageAnalogOutput(int analogOutput, int voltage) throws SerialPortException {
-        if ((analogOutput >= 0 || analogOutput <= 3) && (voltage >= 0 && voltage <= 1023)) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("U"+analogOutput+","+voltage);
-            serialPort.writeByte((byte)0x0D);
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Set "+String.format("%.2f",(double)voltage/100)+" V on analog output "+analogOutput);
+        if ((analogOutput >= 0 && analogOutput <= 3) && (voltage >= 0 && voltage <= 1023)) {
+            if (outputMirror && analogOutputs[analogOutput] == voltage) {
+                LOG.info(() -> "Voltage "+voltage+" already set on analog output "+analogOutput);
+                return;
+            }
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.setVoltageAnalogOutput(analogOutput, voltage));
+            analogOutputs[analogOutput] = voltage;
+            analogOutputsCommanded |= 1 << analogOutput;
+            deselect();
+            completed(IOMetrics.Command.SET_VOLTAGE_ANALOG_OUTPUT, start, analogOutput, voltage / 100.0);
+            LOG.info(() -> "Set "+String.format("%.2f",(double)voltage/100)+" V on analog output "+analogOutput);
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
         }
@@ -409,15 +476,19 @@ public class IOControllerImpl implements IOController {
      */
     @Override
     public double getVoltageAnalogOutput(int analogOutput) throws SerialPortException, SerialPortTimeoutException {
-        if (analogOutput >= 0 || analogOutput <= 3) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("u"+ analogOutput);
-            serialPort.writeByte((byte)0x0D);
-            double voltage = Double.parseDouble(serialPort.readString(6,READ_TIMEOUT_MS).trim());
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Voltage on analog output "+analogOutput+" is "+voltage+" V");
+        if (analogOutput >= 0 && analogOutput <= 3) {
+            if (outputMirror) {
+                double voltage = analogOutputs[analogOutput] / 100.0;
+                LOG.info(() -> "Voltage on analog output "+analogOutput+" is "+voltage+" V (mirror)");
+                return voltage;
+            }
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.getVoltageAnalogOutput(analogOutput));
+            double voltage = readResponse(IOMetrics.Command.GET_VOLTAGE_ANALOG_OUTPUT, true) / 100.0;
+            deselect();
+            completed(IOMetrics.Command.GET_VOLTAGE_ANALOG_OUTPUT, start, analogOutput, voltage);
+            LOG.info(() -> "Voltage on analog output "+analogOutput+" is "+voltage+" V");
             return voltage;
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
@@ -428,25 +499,357 @@ public class IOControllerImpl implements IOController {
     /**
      Get voltage on analog input
      Controller command v
-     @param analogInput number 0-3
-     @return voltage in V 0-10.23
+     @param analogInput number 0-7
+     @return voltage in V 0-10.23, -1 parameter out of range
      @throws SerialPortException exception that might occur in Serial interface
      */
     @Override
     public double getVoltageAnalogInput(int analogInput) throws SerialPortException, SerialPortTimeoutException {
-        if (analogInput >= 0 || analogInput <= 3) {
-        	serialPort.writeInt((char) ioAddress);
-            waitForControllerToBeReady();
-            serialPort.writeString("v"+ analogInput);
-            serialPort.writeByte((byte)0x0D);
-            double voltage = Double.parseDouble(serialPort.readString(6,READ_TIMEOUT_MS).trim());
-            delay(WAIT_FOR_CONTROLLER_MS);
-            serialPort.writeInt((char)(ioAddress+1));
-            LOG.info("Voltage on analog input "+analogInput+" is "+voltage+" V");
+        if (analogInput >= 0 && analogInput <= 7) {
+            long start = System.nanoTime();
+            selectWhenReady();
+            send(CommandEncoder.getVoltageAnalogInput(analogInput));
+            double voltage = readResponse(IOMetrics.Command.GET_VOLTAGE_ANALOG_INPUT, true) / 100.0;
+            deselect();
+            completed(IOMetrics.Command.GET_VOLTAGE_ANALOG_INPUT, start, analogInput, voltage);
+            LOG.info(() -> "Voltage on analog input "+analogInput+" is "+voltage+" V");
             return voltage;
         } else {
             LOG.info(PARAMETER_OUT_OF_RANGE);
-            return 9999;
+            return -1;
+        }
+    }
+
+    /**
+     Read all inputs and outputs of the controller in one session
+     @return new snapshot
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading from the controller
+     */
+    public IOSnapshot getSnapshot() throws SerialPortException, SerialPortTimeoutException {
+        return getSnapshot(new IOSnapshot());
+    }
+
+    /**
+     Read all inputs and outputs of the controller in one session into a snapshot that is reused, e.g. every cycle
+     The controller is selected once. The inputs are read first, the 4 f blocks and then the 8 analog
+     inputs, so the inputs are taken as close together as possible. The outputs come from the output mirror
+     when it is enabled, otherwise they are read with 4 b and 4 u commands
+     Like the other commands it does not lock the controller, threads that share it synchronize on it
+     Controller commands f,v,b,u
+     @param snapshot snapshot to fill
+     @return the given snapshot
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading from the controller
+     */
+    public IOSnapshot getSnapshot(IOSnapshot snapshot) throws SerialPortException, SerialPortTimeoutException {
+        long start = System.nanoTime();
+        int inputs = 0;
+        int outputs;
+        // a session without session object, so filling a snapshot does not allocate
+        beginSession();
+        try {
+            for (int block = 0; block < 4; block++) {
+                inputs |= query(IOMetrics.Command.GET_BYTE_DIGITAL_INPUT_BLOCK,
+                        CommandEncoder.getByteDigitalInputBlock(block), block, false) << (block * 8);
+            }
+            for (int analogInput = 0; analogInput < 8; analogInput++) {
+                snapshot.setAnalogInput(analogInput, query(IOMetrics.Command.GET_VOLTAGE_ANALOG_INPUT,
+                        CommandEncoder.getVoltageAnalogInput(analogInput), analogInput, true));
+            }
+            if (outputMirror) {
+                outputs = digitalOutputs;
+                for (int analogOutput = 0; analogOutput < analogOutputs.length; analogOutput++) {
+                    snapshot.setAnalogOutput(analogOutput, analogOutputs[analogOutput]);
+                }
+            } else {
+                outputs = 0;
+                for (int block = 0; block < 4; block++) {
+                    outputs |= query(IOMetrics.Command.GET_BYTE_DIGITAL_OUTPUT_BLOCK,
+                            CommandEncoder.getByteDigitalOutputBlock(block), block, false) << (block * 8);
+                }
+                for (int analogOutput = 0; analogOutput < analogOutputs.length; analogOutput++) {
+                    snapshot.setAnalogOutput(analogOutput, query(IOMetrics.Command.GET_VOLTAGE_ANALOG_OUTPUT,
+                            CommandEncoder.getVoltageAnalogOutput(analogOutput), analogOutput, true));
+                }
+            }
+        } finally {
+            endSession();
+        }
+        snapshot.fill(inputs, outputs, start, System.nanoTime() - start);
+        return snapshot;
+    }
+
+    /**
+     Serve the output getters from an in-memory mirror of the outputs written by this process
+     and drop writes that would not change the outputs
+     Enabling the mirror reads the outputs from the controller with resync()
+     @param enabled true to enable the output mirror, false to always use the controller
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading the outputs
+     */
+    public void setOutputMirror(boolean enabled) throws SerialPortException, SerialPortTimeoutException {
+        if (enabled) {
+            resync();
+        } else {
+            outputMirror = false;
+            LOG.info("Output mirror disabled");
+        }
+    }
+
+    /**
+     Command latencies, ready polls, timeouts, parse errors and bytes sent and received of this controller
+     Register them with JMX with getMetrics().registerMBean()
+     @return live metrics of this controller
+     */
+    public IOMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     Record every command sent to the controller, e.g. for diagnosis afterwards
+     Commands served from the output mirror do not reach the controller and are not recorded
+     @param recorder recorder to append the commands to, null to stop recording
+     */
+    public void setRecorder(IORecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public IORecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     Drive the controller with the timings of a profile instead of the default timings,
+     e.g. one made by TimingCalibrator or loaded with TimingProfile.load()
+     A response that comes later than the profile allows is still accepted up to the default timeout
+     and counted as drift, after 3 drifts the default timings are used again
+     @param profile timings of the board, null for the default timings
+     */
+    public void setTimingProfile(TimingProfile profile) {
+        timing = profile == null ? TimingProfile.defaults() : profile;
+        profileDrifts = 0;
+        LOG.info(() -> "Timing profile set to "+timing);
+    }
+
+    public TimingProfile getTimingProfile() {
+        return timing;
+    }
+
+    /**
+     @return number of responses that came later than the timing profile allowed
+     */
+    public long getTimingDriftCount() {
+        return driftCount;
+    }
+
+    public boolean isOutputMirror() {
+        return outputMirror;
+    }
+
+    /**
+     Rebuild the output mirror from the controller and enable it, e.g. after a reset or reconnect
+     Controller commands b,u
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading the outputs
+     */
+    public void resync() throws SerialPortException, SerialPortTimeoutException {
+        outputMirror = false;
+        int outputs = 0;
+        int[] voltages = new int[analogOutputs.length];
+        try (IOSession session = openSession()) {
+            for (int block = 0; block < 4; block++) {
+                outputs |= session.getByteDigitalOutputBlock(block) << (block * 8);
+            }
+            for (int analogOutput = 0; analogOutput < analogOutputs.length; analogOutput++) {
+                voltages[analogOutput] = (int) Math.round(session.getVoltageAnalogOutput(analogOutput) * 100);
+            }
+        }
+        digitalOutputs = outputs;
+        System.arraycopy(voltages, 0, analogOutputs, 0, voltages.length);
+        digitalOutputsCommanded = 0xFFFFFFFF;
+        analogOutputsCommanded = 0xF;
+        outputMirror = true;
+        LOG.info(() -> "Output mirror synchronized, digital outputs "+Integer.toHexString(digitalOutputs)+"H");
+    }
+
+    /**
+     Open a session that keeps the controller addressed until the session is closed
+     Commands in the session only pay the ready handshake, not the select and deselect
+     Example: try (IOSession session = io.openSession()) { session.setByteDigitalOutputBlock(0,15); ... }
+     Sessions can be nested, the controller is deselected when the outermost session closes
+     @return open session
+     @throws SerialPortException exception that might occur in Serial interface
+     */
+    public IOSession openSession() throws SerialPortException {
+        beginSession();
+        LOG.info(() -> "Session opened on device address "+ioAddress);
+        return new Session();
+    }
+
+    private void beginSession() throws SerialPortException {
+        if (sessionDepth == 0) {
+            send(selectFrame);
+            awaitReadyStatus();
+        }
+        sessionDepth++;
+    }
+
+    private void endSession() throws SerialPortException {
+        sessionDepth--;
+        deselect();
+    }
+
+    /**
+     Request the status until the controller is ready, the controller has to be selected by a session
+     Used by TimingCalibrator to measure the ready handshake
+     */
+    void awaitReady() throws SerialPortException {
+        waitForControllerToBeReady();
+    }
+
+    /**
+     Check that the serial port is open and the controller answers a status request
+     Used by IOLinkMonitor, the controller has to be locked
+     @param timeoutMs maximum wait for the ready status
+     @throws SerialPortException when the port is closed or the controller is not ready in time
+     */
+    void checkLink(int timeoutMs) throws SerialPortException {
+        if (serialPort == null || !serialPort.isOpened()) {
+            throw new SerialPortException(serialDevice, "checkLink()", SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+        if (sessionDepth == 0) {
+            send(selectFrame);
+            awaitReadyStatus(timeoutMs);
+            send(deselectFrame);
+        } else {
+            send(CommandEncoder.READY_REQUEST);
+            awaitReadyStatus(timeoutMs);
+        }
+    }
+
+    /**
+     Close the serial port, if it is still open, and open it again, e.g. after a USB-serial adapter dropped out
+     Used by IOLinkMonitor, the controller has to be locked
+     @throws SerialPortException when the port cannot be opened
+     */
+    void reopenSerialPort() throws SerialPortException {
+        if (serialPort != null && serialPort.isOpened()) {
+            try {
+                serialPort.closePort();
+            } catch (SerialPortException e) {
+                LOG.fine(e.getMessage());
+            }
+        }
+        serialPort = transport != null ? transport : new JsscSerialTransport(serialDevice);
+        decoder = new ResponseDecoder(serialPort, metrics);
+        serialPort.openPort();
+        serialPort.setParams(SerialPort.BAUDRATE_9600, SerialPort.DATABITS_8, SerialPort.STOPBITS_2, SerialPort.PARITY_NONE);
+        LOG.info(() -> "Serial port reopened on "+serialDevice);
+    }
+
+    /**
+     Send the echo and local mode, block connections and outputs last commanded by this process again,
+     e.g. after the controller lost them in a power dip. Settings never commanded are left alone
+     Used by IOLinkMonitor, the controller has to be locked
+     Controller commands X,Y,L,N,G,H,C,D,B,A,U
+     @throws SerialPortException exception that might occur in Serial interface
+     */
+    void restoreState() throws SerialPortException {
+        beginSession();
+        try {
+            if (echoMode >= 0) {
+                command(IOMetrics.Command.SET_ECHO_MODE, CommandEncoder.setEchoMode(echoMode), -1, echoMode);
+            }
+            if (localMode >= 0) {
+                command(IOMetrics.Command.SET_LOCAL_MODE, CommandEncoder.setLocalMode(localMode), -1, localMode);
+            }
+            for (int block = 0; block < 4; block++) {
+                if ((blockConnectionsCommanded >>> block & 1) != 0) {
+                    int connectionSwitch = blockConnections >>> block & 1;
+                    command(IOMetrics.Command.SET_BLOCK_CONNECTION, CommandEncoder.setBlockConnection(block, connectionSwitch), block, connectionSwitch);
+                }
+            }
+            if (digitalOutputsCommanded == 0xFFFFFFFF && (digitalOutputs == 0 || digitalOutputs == 0xFFFFFFFF)) {
+                int stateSwitch = digitalOutputs == 0 ? 0 : 1;
+                command(IOMetrics.Command.SET_ALL_DIGITAL_OUTPUTS, CommandEncoder.setAllDigitalOutputs(stateSwitch), -1, stateSwitch);
+            } else {
+                for (int block = 0; block < 4; block++) {
+                    int shift = block * 8;
+                    int commanded = digitalOutputsCommanded >>> shift & 0xFF;
+                    if (commanded == 0xFF) {
+                        int byteValue = digitalOutputs >>> shift & 0xFF;
+                        command(IOMetrics.Command.SET_BYTE_DIGITAL_OUTPUT_BLOCK, CommandEncoder.setByteDigitalOutputBlock(block, byteValue), block, byteValue);
+                        continue;
+                    }
+                    while (commanded != 0) {
+                        int digitalOutput = shift + Integer.numberOfTrailingZeros(commanded);
+                        commanded &= commanded - 1;
+                        int logicalLevel = digitalOutputs >>> digitalOutput & 1;
+                        command(IOMetrics.Command.SET_LOGICAL_LEVEL_DIGITAL_OUTPUT,
+                                CommandEncoder.setLogicalLevelDigitalOutput(digitalOutput, logicalLevel), digitalOutput, logicalLevel);
+                    }
+                }
+            }
+            for (int analogOutput = 0; analogOutput < analogOutputs.length; analogOutput++) {
+                if ((analogOutputsCommanded >>> analogOutput & 1) != 0) {
+                    int voltage = analogOutputs[analogOutput];
+                    command(IOMetrics.Command.SET_VOLTAGE_ANALOG_OUTPUT, CommandEncoder.setVoltageAnalogOutput(analogOutput, voltage),
+                            analogOutput, voltage / 100.0);
+                }
+            }
+        } finally {
+            endSession();
+        }
+        LOG.info("Controller state restored");
+    }
+
+    /**
+     After a reset the outputs are off and the modes and block connections are the defaults of the controller
+     */
+    private void resetCommandedState() {
+        digitalOutputs = 0;
+        Arrays.fill(analogOutputs, 0);
+        digitalOutputsCommanded = 0xFFFFFFFF;
+        analogOutputsCommanded = 0xF;
+        blockConnectionsCommanded = 0;
+        localMode = -1;
+        echoMode = -1;
+    }
+
+    /**
+     Reset the controller and wait until it reports ready, the controller stays selected
+     Used by TimingCalibrator to measure the reset turnaround
+     @return nanoseconds from the reset until the controller was ready
+     */
+    long resetUntilReady() throws SerialPortException {
+        send(resetFrame);
+        long start = System.nanoTime();
+        resetCommandedState();
+        waitForControllerToBeReady();
+        return System.nanoTime() - start;
+    }
+
+    /**
+     Select the controller, unless a session already keeps it selected, and wait until it is ready
+     The select byte and the first status request go out in one write
+     */
+    private void selectWhenReady() throws SerialPortException {
+        if (sessionDepth == 0) {
+            send(selectFrame);
+            awaitReadyStatus();
+        } else {
+            waitForControllerToBeReady();
+        }
+    }
+
+    /**
+     Deselect the controller once it is ready, unless a session keeps it selected
+     */
+    private void deselect() throws SerialPortException {
+        if (sessionDepth == 0) {
+            waitForControllerToBeReady();
+            send(deselectFrame);
         }
     }
 
@@ -456,7 +859,9 @@ public class IOControllerImpl implements IOController {
      */
     private static void delay(int ms) {
         try {
-            LOG.info("waiting "+ms+" ms");
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.fine("waiting "+ms+" ms");
+            }
             Thread.currentThread();
             Thread.sleep(ms); //sleep
         }
@@ -470,19 +875,160 @@ public class IOControllerImpl implements IOController {
     /**
      Check if controller is ready for a new command to receive
      When controller sent a 16H status-byte it is ready
-     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortException exception that might occur in Serial interface or when the controller is not ready within READY_TIMEOUT_MS
      */
     private void waitForControllerToBeReady() throws SerialPortException {
-        delay(WAIT_FOR_CONTROLLER_MS);
-        String status = "";
-        while (!READY_STATUS.equals(status))
-        {   serialPort.writeInt((char)0);
-            byte[] buffer = serialPort.readBytes(1);
-            status = Integer.toHexString(buffer[0]);
-            LOG.info("Status received from controller : " +status+ "H");
+        send(CommandEncoder.READY_REQUEST);
+        awaitReadyStatus();
+    }
+
+    /**
+     Wait for the 16H status-byte after a status request was sent. The status is requested again as soon as
+     the previous status arrived, with a doubling backoff while the controller is busy or silent
+     @throws SerialPortException exception that might occur in Serial interface or when the controller is not ready within READY_TIMEOUT_MS
+     */
+    private void awaitReadyStatus() throws SerialPortException {
+        awaitReadyStatus(READY_TIMEOUT_MS);
+    }
+
+    private void awaitReadyStatus(int timeoutMs) throws SerialPortException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        int backoffMs = 1;
+        while (true) {
+            metrics.incrementReadyPolls();
+            try {
+                byte status = readStatus();
+                //skip bytes left from echo or an earlier status request
+                while (status != READY_STATUS && serialPort.getInputBufferBytesCount() > 0) {
+                    status = readStatus();
+                }
+                if (LOG.isLoggable(Level.FINE)) {
+                    LOG.fine("Status received from controller : "+Integer.toHexString(status & 0xFF)+"H");
+                }
+                if (status == READY_STATUS) {
+                    return;
+                }
+            }
+            catch (SerialPortTimeoutException e) {
+                LOG.fine(() -> "No status received from controller within "+timing.getReadyPollTimeoutMs()+" ms");
+            }
+            if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs) - deadline > 0) {
+                metrics.incrementTimeouts();
+                throw new SerialPortException(serialPort.getPortName(), "waitForControllerToBeReady()",
+                        "Controller not ready within "+timeoutMs+" ms");
+            }
+            delay(backoffMs);
+            backoffMs = Math.min(backoffMs * 2, READY_BACKOFF_MAX_MS);
+            send(CommandEncoder.READY_REQUEST);
+        }
+    }
+
+    /**
+     Read one status byte within the ready poll timeout of the timing profile
+     A status that misses a calibrated timeout is drift, it is waited for up to the default timeout
+     so that a late status is not taken for the answer to the next status request
+     */
+    private byte readStatus() throws SerialPortException, SerialPortTimeoutException {
+        TimingProfile profile = timing;
+        try {
+            serialPort.read(statusBuffer, 0, 1, profile.getReadyPollTimeoutMs());
+        } catch (SerialPortTimeoutException e) {
+            if (profile.getReadyPollTimeoutMs() >= TimingProfile.DEFAULT_READY_POLL_TIMEOUT_MS) {
+                throw e;
+            }
+            drifted(profile, "status request");
+            serialPort.read(statusBuffer, 0, 1, TimingProfile.DEFAULT_READY_POLL_TIMEOUT_MS - profile.getReadyPollTimeoutMs());
+        }
+        metrics.addBytesReceived(1);
+        return statusBuffer[0];
+    }
+
+    /**
+     Read the response of a command within the read timeout of the timing profile
+     A response that misses a calibrated timeout is drift, it is waited for up to the default timeout.
+     Only a response that misses the default timeout counts as a timeout in the metrics
+     @param command command type the response belongs to
+     @param hundredths true for a fixed-point response in hundredths, false for an integer
+     @return value of the response
+     */
+    private int readResponse(IOMetrics.Command command, boolean hundredths) throws SerialPortException, SerialPortTimeoutException {
+        TimingProfile profile = timing;
+        int timeout = profile.getReadTimeoutMs(command);
+        try {
+            try {
+                return hundredths ? decoder.readHundredths(timeout) : decoder.readInteger(timeout);
+            } catch (SerialPortTimeoutException e) {
+                if (timeout >= TimingProfile.DEFAULT_READ_TIMEOUT_MS) {
+                    throw e;
+                }
+                drifted(profile, command.name());
+                timeout = TimingProfile.DEFAULT_READ_TIMEOUT_MS - timeout;
+                return hundredths ? decoder.readHundredths(timeout) : decoder.readInteger(timeout);
+            }
+        } catch (SerialPortTimeoutException e) {
+            metrics.incrementTimeouts();
+            throw e;
         }
     }
 
+    /**
+     Send a write command, without logging and without the output mirror, for writes in bulk
+     */
+    private void command(IOMetrics.Command command, byte[] frame, int channel, double value) throws SerialPortException {
+        long start = System.nanoTime();
+        selectWhenReady();
+        send(frame);
+        deselect();
+        completed(command, start, channel, value);
+    }
+
+    /**
+     Send a read command and decode its response, without logging, for reads in bulk
+     @return value of the response, in hundredths for a fixed-point response
+     */
+    private int query(IOMetrics.Command command, byte[] frame, int channel, boolean hundredths) throws SerialPortException, SerialPortTimeoutException {
+        long start = System.nanoTime();
+        selectWhenReady();
+        send(frame);
+        int value = readResponse(command, hundredths);
+        deselect();
+        completed(command, start, channel, hundredths ? value / 100.0 : value);
+        return value;
+    }
+
+    /**
+     Count a response that came later than the timing profile allows
+     After DRIFT_LIMIT drifts the profile is replaced by the default timings
+     */
+    private void drifted(TimingProfile profile, String what) {
+        driftCount++;
+        metrics.incrementDriftRetries();
+        LOG.info(() -> "Controller slower than its timing profile on "+what);
+        if (profile == timing && ++profileDrifts >= DRIFT_LIMIT) {
+            timing = TimingProfile.defaults();
+            LOG.info("Timing profile replaced by the default timings after "+DRIFT_LIMIT+" drifts, calibrate again");
+        }
+    }
+
+    /**
+     Count a completed command in the metrics and append it to the recorder, if any
+     */
+    private void completed(IOMetrics.Command command, long start, int channel, double value) {
+        metrics.recordCommand(command, start);
+        IORecorder commandRecorder = recorder;
+        if (commandRecorder != null) {
+            commandRecorder.recordCommand(ioAddress, command, channel, value, start, System.nanoTime());
+        }
+    }
+
+    /**
+     Write a command frame and count its bytes
+     */
+    private void send(byte[] frame) throws SerialPortException {
+        serialPort.writeBytes(frame);
+        metrics.addBytesSent(frame.length);
+    }
+
     @Override
     public String toString() {
         return "IOController{"+
@@ -490,4 +1036,99 @@ public class IOControllerImpl implements IOController {
                 ", ioAddress="+ioAddress+
                 '}';
     }
-}
\ No newline at end of file
+
+    /**
+     Session on this controller, all commands are executed by the controller itself
+     */
+    private class Session implements IOSession {
+        private boolean closed;
+
+        @Override
+        public void resetController() throws SerialPortException {
+            IOControllerImpl.this.resetController();
+        }
+
+        @Override
+        public void setLocalMode(int localSwitch) throws SerialPortException {
+            IOControllerImpl.this.setLocalMode(localSwitch);
+        }
+
+        @Override
+        public void setEchoMode(int echoSwitch) throws SerialPortException {
+            IOControllerImpl.this.setEchoMode(echoSwitch);
+        }
+
+        @Override
+        public void setAllDigitalOutputs(int stateSwitch) throws SerialPortException {
+            IOControllerImpl.this.setAllDigitalOutputs(stateSwitch);
+        }
+
+        @Override
+        public void setBlockConnection(int block, int connectionSwitch) throws SerialPortException {
+            IOControllerImpl.this.setBlockConnection(block, connectionSwitch);
+        }
+
+        @Override
+        public int getBlockConnection(int block) throws SerialPortException, SerialPortTimeoutException {
+            return IOControllerImpl.this.getBlockConnection(block);
+        }
+
+        @Override
+        public void setLogicalLevelDigitalOutput(int digitalOutput, int logicalLevel) throws SerialPortException {
+            IOControllerImpl.this.setLogicalLevelDigitalOutput(digitalOutput, logicalLevel);
+        }
+
+        @Override
+        public int getLogicalLevelDigitalOutput(int digitalOutput) throws SerialPortException, SerialPortTimeoutException {
+            return IOControllerImpl.this.getLogicalLevelDigitalOutput(digitalOutput);
+        }
+
+        @Override
+        public void setByteDigitalOutputBlock(int digitalOutputBlock, int byteValue) throws SerialPortException {
+            IOControllerImpl.this.setByteDigitalOutputBlock(digitalOutputBlock, byteValue);
+        }
+
+        @Override
+        public int getByteDigitalOutputBlock(int digitalOutputBlock) throws SerialPortException, SerialPortTimeoutException {
+            return IOControllerImpl.this.getByteDigitalOutputBlock(digitalOutputBlock);
+        }
+
+        @Override
+        public int getByteDigitalInputBlock(int digitalInputBlock) throws SerialPortException, SerialPortTimeoutException {
+            return IOControllerImpl.this.getByteDigitalInputBlock(digitalInputBlock);
+        }
+
+        @Override
+        public int getLogicalLevelDigitalInput(int digitalInput) throws SerialPortException, SerialPortTimeoutException {
+            return IOControllerImpl.this.getLogicalLevelDigitalInput(digitalInput);
+        }
+
+        @Override
+        public void setVoltageAnalogOutput(int analogOutput, int voltage) throws SerialPortException {
+            IOControllerImpl.this.setVoltageAnalogOutput(analogOutput, voltage);
+        }
+
+        @Override
+        public double getVoltageAnalogOutput(int analogOutput) throws SerialPortException, SerialPortTimeoutException {
+            return IOControllerImpl.this.getVoltageAnalogOutput(analogOutput);
+        }
+
+        @Override
+        public double getVoltageAnalogInput(int analogInput) throws SerialPortException, SerialPortTimeoutException {
+            return IOControllerImpl.this.getVoltageAnalogInput(analogInput);
+        }
+
+        /**
+         Close session, the controller is deselected when this is the outermost session
+         @throws SerialPortException exception that might occur in Serial interface
+         */
+        @Override
+        public void close() throws SerialPortException {
+            if (!closed) {
+                closed = true;
+                endSession();
+                LOG.info(() -> "Session closed on device address "+ioAddress);
+            }
+        }
+    }
+}
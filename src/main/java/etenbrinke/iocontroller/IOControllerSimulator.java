@@ -0,0 +1,589 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public class IOControllerSimulator implements SerialTransport {
+
+    public static final int DEFAULT_BAUD_RATE = 9600;
+    public static final long DEFAULT_TURNAROUND_MICROS = 1000;
+    private static final int BITS_PER_BYTE = 11; // start bit, 8 data bits and 2 stop bits
+    private static final int[] ADDRESSES = {144, 146, 148, 150};
+    private static final byte READY_STATUS = 0x16;
+    private static final byte CANCEL = 0x18;
+    private static final byte CR = 0x0D;
+    private final String portName;
+    private final Board[] boards = new Board[ADDRESSES.length];
+    private static final int MAX_LINE = 32;
+    private static final int MAX_ARGUMENTS = 2;
+    private final byte[] line = new byte[MAX_LINE];
+    private final int[] args = new int[MAX_ARGUMENTS];
+    private final byte[] response = new byte[16];
+    private int lineLength;
+    private int argCount;
+    private Board selected;
+    private boolean opened;
+    private long byteNanos;
+    private long turnaroundNanos;
+    private long txFreeAt;
+    private long rxFreeAt;
+    private long busyUntil;
+    private byte[] rxBytes = new byte[64];
+    private long[] rxTimes = new long[64];
+    private int rxHead;
+    private int rxCount;
+
+    /**
+     Simulated controllers on 9600 baud with a turnaround latency of 1 ms
+     */
+    public IOControllerSimulator() {
+        this("simulator", DEFAULT_BAUD_RATE, DEFAULT_TURNAROUND_MICROS);
+    }
+
+    /**
+     Simulated controllers on addresses 144,146,148 and 150 sharing one serial line
+     A baud rate and turnaround of 0 simulate an infinitely fast line and controller
+     @param portName name reported as serial port name
+     @param baudRate simulated baud rate, 0 for no transmission delay
+     @param turnaroundMicros time the controller needs to process a command
+     */
+    public IOControllerSimulator(String portName, int baudRate, long turnaroundMicros) {
+        this.portName = portName;
+        for (int i = 0; i < ADDRESSES.length; i++) {
+            boards[i] = new Board(ADDRESSES[i]);
+        }
+        setBaudRate(baudRate);
+        setTurnaroundMicros(turnaroundMicros);
+    }
+
+    /**
+     Set simulated baud rate. Every byte takes 11 bit times on the line
+     @param baudRate baud rate, 0 for no transmission delay
+     */
+    public synchronized void setBaudRate(int baudRate) {
+        byteNanos = baudRate > 0 ? TimeUnit.SECONDS.toNanos(BITS_PER_BYTE) / baudRate : 0;
+    }
+
+    /**
+     Set simulated time between the end of a command and the controller being ready again
+     @param turnaroundMicros turnaround in microseconds, 0 for none
+     */
+    public synchronized void setTurnaroundMicros(long turnaroundMicros) {
+        turnaroundNanos = TimeUnit.MICROSECONDS.toNanos(turnaroundMicros);
+    }
+
+    /**
+     Set the logical levels on the 32 digital inputs of a controller
+     @param ioAddress device address 144,146,148,150
+     @param inputs digital input 0 in bit 0 up to digital input 31 in bit 31
+     */
+    public synchronized void setDigitalInputs(int ioAddress, int inputs) {
+        board(ioAddress).digitalInputs = inputs;
+    }
+
+    /**
+     Set logical level on one digital input of a controller
+     @param ioAddress device address 144,146,148,150
+     @param digitalInput number 0-31
+     @param logicalLevel logical level 0 or 1
+     */
+    public synchronized void setDigitalInput(int ioAddress, int digitalInput, int logicalLevel) {
+        Board board = board(ioAddress);
+        if (logicalLevel == 1) {
+            board.digitalInputs |= 1 << digitalInput;
+        } else {
+            board.digitalInputs &= ~(1 << digitalInput);
+        }
+    }
+
+    /**
+     Set voltage on an analog input of a controller
+     @param ioAddress device address 144,146,148,150
+     @param analogInput number 0-7
+     @param voltage 0-1023. 1023 equals 10.23 V
+     */
+    public synchronized void setAnalogInput(int ioAddress, int analogInput, int voltage) {
+        board(ioAddress).analogInputs[analogInput] = voltage;
+    }
+
+    public synchronized int getDigitalOutputs(int ioAddress) {
+        return board(ioAddress).digitalOutputs;
+    }
+
+    public synchronized int getAnalogOutput(int ioAddress, int analogOutput) {
+        return board(ioAddress).analogOutputs[analogOutput];
+    }
+
+    @Override
+    public String getPortName() {
+        return portName;
+    }
+
+    @Override
+    public synchronized boolean isOpened() {
+        return opened;
+    }
+
+    @Override
+    public synchronized void openPort() throws SerialPortException {
+        if (opened) {
+            throw new SerialPortException(portName, "openPort()", SerialPortException.TYPE_PORT_ALREADY_OPENED);
+        }
+        opened = true;
+        selected = null;
+        lineLength = 0;
+        rxCount = 0;
+    }
+
+    /**
+     The simulated timing is set with setBaudRate, the parameters are only validated
+     */
+    @Override
+    public void setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException {
+        checkOpened("setParams()");
+    }
+
+    @Override
+    public synchronized void closePort() throws SerialPortException {
+        checkOpened("closePort()");
+        opened = false;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void writeBytes(byte[] buffer) throws SerialPortException {
+        checkOpened("writeBytes()");
+        for (byte b : buffer) {
+            receive(b);
+        }
+        notifyAll();
+    }
+
+    @Override
+    public void writeByte(byte singleByte) throws SerialPortException {
+        writeBytes(new byte[]{singleByte});
+    }
+
+    @Override
+    public void writeInt(int singleInt) throws SerialPortException {
+        writeBytes(new byte[]{(byte) singleInt});
+    }
+
+    @Override
+    public void writeString(String string) throws SerialPortException {
+        writeBytes(string.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public byte[] readBytes(int byteCount) throws SerialPortException {
+        byte[] buffer = new byte[byteCount];
+        for (int i = 0; i < byteCount; i++) {
+            buffer[i] = (byte) nextByte(0, false, "readBytes()");
+        }
+        return buffer;
+    }
+
+    @Override
+    public byte[] readBytes(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        return readBytes(byteCount, timeout, "readBytes()");
+    }
+
+    @Override
+    public String readString(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        return new String(readBytes(byteCount, timeout, "readString()"), StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int b = nextByte(deadline, true, "read()");
+        if (b < 0) {
+            throw new SerialPortTimeoutException(portName, "read()", timeout);
+        }
+        buffer[offset] = (byte) b;
+        int count = 1;
+        synchronized (this) {
+            long now = System.nanoTime();
+            while (count < length && rxCount > 0 && rxTimes[rxHead] - now <= 0) {
+                buffer[offset + count++] = rxBytes[rxHead];
+                rxHead = (rxHead + 1) % rxBytes.length;
+                rxCount--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     Number of response bytes that already arrived at the host
+     */
+    @Override
+    public synchronized int getInputBufferBytesCount() throws SerialPortException {
+        checkOpened("getInputBufferBytesCount()");
+        long now = System.nanoTime();
+        int count = 0;
+        while (count < rxCount && rxTimes[(rxHead + count) % rxTimes.length] - now <= 0) {
+            count++;
+        }
+        return count;
+    }
+
+    private byte[] readBytes(int byteCount, int timeout, String methodName) throws SerialPortException, SerialPortTimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        byte[] buffer = new byte[byteCount];
+        for (int i = 0; i < byteCount; i++) {
+            int b = nextByte(deadline, true, methodName);
+            if (b < 0) {
+                throw new SerialPortTimeoutException(portName, methodName, timeout);
+            }
+            buffer[i] = (byte) b;
+        }
+        return buffer;
+    }
+
+    /**
+     Take the next response byte once it has been transmitted on the simulated line
+     @return byte value 0-255 or -1 when the deadline passed
+     */
+    private int nextByte(long deadline, boolean timed, String methodName) throws SerialPortException {
+        long availableAt;
+        int b;
+        synchronized (this) {
+            while (rxCount == 0) {
+                checkOpened(methodName);
+                long remaining = deadline - System.nanoTime();
+                if (timed && remaining <= 0) {
+                    return -1;
+                }
+                try {
+                    if (timed) {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } else {
+                        wait();
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new SerialPortException(portName, methodName, SerialPortException.TYPE_LISTENER_THREAD_INTERRUPTED);
+                }
+            }
+            availableAt = rxTimes[rxHead];
+            if (timed && availableAt - deadline > 0) {
+                return -1;
+            }
+            b = rxBytes[rxHead] & 0xFF;
+            rxHead = (rxHead + 1) % rxBytes.length;
+            rxCount--;
+        }
+        long wait;
+        while ((wait = availableAt - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        return b;
+    }
+
+    private void checkOpened(String methodName) throws SerialPortException {
+        if (!isOpened()) {
+            throw new SerialPortException(portName, methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+    }
+
+    /**
+     Handle one byte arriving at the controllers
+     */
+    private void receive(byte b) {
+        long arrival = Math.max(System.nanoTime(), txFreeAt) + byteNanos;
+        txFreeAt = arrival;
+        int value = b & 0xFF;
+        for (Board board : boards) {
+            if (value == board.address) {
+                selected = board;
+                lineLength = 0;
+                return;
+            }
+            if (value == board.address + 1) {
+                if (selected == board) {
+                    selected = null;
+                }
+                return;
+            }
+        }
+        if (selected == null) {
+            return;
+        }
+        if (b == 0) {
+            respond(READY_STATUS, Math.max(arrival, busyUntil));
+        } else if (b == CANCEL) {
+            lineLength = 0;
+        } else {
+            if (selected.echoMode) {
+                respond(b, arrival);
+            }
+            if (b == CR) {
+                execute(selected, arrival);
+                lineLength = 0;
+            } else if (lineLength < MAX_LINE) {
+                line[lineLength++] = b;
+            } else {
+                // longer than any command, malformed
+                lineLength = MAX_LINE + 1;
+            }
+        }
+    }
+
+    /**
+     Execute the command line in place, without allocating
+     */
+    private void execute(Board board, long arrival) {
+        busyUntil = arrival + turnaroundNanos;
+        if (lineLength == 0 || lineLength > MAX_LINE || !parseArguments()) {
+            return;
+        }
+        char commandChar = (char) line[0];
+        switch (commandChar) {
+            case 'R':
+                board.reset();
+                break;
+            case 'L':
+            case 'N':
+                board.localMode = commandChar == 'L';
+                break;
+            case 'X':
+            case 'Y':
+                board.echoMode = commandChar == 'X';
+                break;
+            case 'C':
+                board.digitalOutputs = 0;
+                break;
+            case 'D':
+                board.digitalOutputs = 0xFFFFFFFF;
+                break;
+            case 'G':
+            case 'H':
+                if (inRange(1, 3)) {
+                    board.blockConnections[args[0]] = commandChar == 'G';
+                }
+                break;
+            case 'g':
+                if (inRange(1, 3)) {
+                    respondInteger(board.blockConnections[args[0]] ? 1 : 0, 0);
+                }
+                break;
+            case 'A':
+                if (inRange(2, 31) && (args[1] == 0 || args[1] == 1)) {
+                    if (args[1] == 1) {
+                        board.digitalOutputs |= 1 << args[0];
+                    } else {
+                        board.digitalOutputs &= ~(1 << args[0]);
+                    }
+                }
+                break;
+            case 'a':
+                if (inRange(1, 31)) {
+                    respondInteger((board.digitalOutputs >>> args[0]) & 1, 0);
+                }
+                break;
+            case 'B':
+                if (inRange(2, 3) && args[1] >= 0 && args[1] <= 255) {
+                    int shift = args[0] * 8;
+                    board.digitalOutputs = (board.digitalOutputs & ~(0xFF << shift)) | (args[1] << shift);
+                }
+                break;
+            case 'b':
+                if (inRange(1, 3)) {
+                    respondInteger((board.digitalOutputs >>> (args[0] * 8)) & 0xFF, 4);
+                }
+                break;
+            case 'f':
+                if (inRange(1, 3)) {
+                    respondInteger((board.digitalInputs >>> (args[0] * 8)) & 0xFF, 4);
+                }
+                break;
+            case 'e':
+                if (inRange(1, 31)) {
+                    respondInteger((board.digitalInputs >>> args[0]) & 1, 0);
+                }
+                break;
+            case 'U':
+                if (inRange(2, 3) && args[1] >= 0 && args[1] <= 1023) {
+                    board.analogOutputs[args[0]] = args[1];
+                }
+                break;
+            case 'u':
+                if (inRange(1, 3)) {
+                    respondHundredths(board.analogOutputs[args[0]]);
+                }
+                break;
+            case 'v':
+                if (inRange(1, 7)) {
+                    respondHundredths(board.analogInputs[args[0]]);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     Parse the comma separated decimal arguments following the command character into args
+     @return false when malformed
+     */
+    private boolean parseArguments() {
+        argCount = 0;
+        if (lineLength == 1) {
+            return true;
+        }
+        int i = 1;
+        while (true) {
+            while (i < lineLength && line[i] == ' ') {
+                i++;
+            }
+            boolean negative = false;
+            if (i < lineLength && (line[i] == '-' || line[i] == '+')) {
+                negative = line[i] == '-';
+                i++;
+            }
+            int value = 0;
+            int digits = 0;
+            while (i < lineLength && line[i] >= '0' && line[i] <= '9' && digits < 9) {
+                value = value * 10 + (line[i++] - '0');
+                digits++;
+            }
+            while (i < lineLength && line[i] == ' ') {
+                i++;
+            }
+            if (digits == 0 || (i < lineLength && line[i] != ',')) {
+                return false;
+            }
+            if (argCount < MAX_ARGUMENTS) {
+                args[argCount] = negative ? -value : value;
+            }
+            // more arguments than any command takes fail the count check of the command
+            argCount++;
+            if (i == lineLength) {
+                return true;
+            }
+            i++;
+        }
+    }
+
+    private boolean inRange(int count, int maxFirst) {
+        return argCount == count && args[0] >= 0 && args[0] <= maxFirst;
+    }
+
+    /**
+     Respond a right aligned integer like "%4d" followed by CR
+     @param value value, not negative
+     @param width minimum width, 0 for none
+     */
+    private void respondInteger(int value, int width) {
+        int length = 0;
+        do {
+            response[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length < width) {
+            response[length++] = ' ';
+        }
+        respondReversed(length);
+    }
+
+    /**
+     Respond a voltage in counts like "%5.2f" of counts / 100 followed by CR
+     @param counts voltage in counts, not negative
+     */
+    private void respondHundredths(int counts) {
+        int length = 0;
+        response[length++] = (byte) ('0' + counts % 10);
+        response[length++] = (byte) ('0' + counts / 10 % 10);
+        response[length++] = '.';
+        int units = counts / 100;
+        do {
+            response[length++] = (byte) ('0' + units % 10);
+            units /= 10;
+        } while (units > 0);
+        while (length < 5) {
+            response[length++] = ' ';
+        }
+        respondReversed(length);
+    }
+
+    /**
+     Respond the characters built back to front in the response buffer, followed by CR
+     */
+    private void respondReversed(int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            respond(response[i], busyUntil);
+        }
+        respond(CR, busyUntil);
+    }
+
+    private void respond(byte b, long readyAt) {
+        if (rxCount == rxBytes.length) {
+            byte[] bytes = new byte[rxBytes.length * 2];
+            long[] times = new long[rxTimes.length * 2];
+            for (int i = 0; i < rxCount; i++) {
+                bytes[i] = rxBytes[(rxHead + i) % rxBytes.length];
+                times[i] = rxTimes[(rxHead + i) % rxTimes.length];
+            }
+            rxBytes = bytes;
+            rxTimes = times;
+            rxHead = 0;
+        }
+        rxFreeAt = Math.max(readyAt, rxFreeAt) + byteNanos;
+        int tail = (rxHead + rxCount) % rxBytes.length;
+        rxBytes[tail] = b;
+        rxTimes[tail] = rxFreeAt;
+        rxCount++;
+    }
+
+    private Board board(int ioAddress) {
+        for (Board board : boards) {
+            if (board.address == ioAddress) {
+                return board;
+            }
+        }
+        throw new IllegalArgumentException("No controller on address "+ioAddress);
+    }
+
+    @Override
+    public String toString() {
+        return "IOControllerSimulator{"+
+                "portName='"+portName+'\''+
+                ", byteNanos="+byteNanos+
+                ", turnaroundNanos="+turnaroundNanos+
+                '}';
+    }
+
+    /**
+     State of one simulated controller
+     */
+    private static final class Board {
+        private final int address;
+        private final int[] analogOutputs = new int[4];
+        private final int[] analogInputs = new int[8];
+        private final boolean[] blockConnections = new boolean[4];
+        private int digitalOutputs;
+        private int digitalInputs;
+        private boolean localMode;
+        private boolean echoMode;
+
+        private Board(int address) {
+            this.address = address;
+        }
+
+        private void reset() {
+            digitalOutputs = 0;
+            for (int i = 0; i < analogOutputs.length; i++) {
+                analogOutputs[i] = 0;
+            }
+            for (int i = 0; i < blockConnections.length; i++) {
+                blockConnections[i] = false;
+            }
+            localMode = false;
+            echoMode = false;
+        }
+    }
+}
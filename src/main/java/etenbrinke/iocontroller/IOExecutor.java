@@ -0,0 +1,12 @@
+package etenbrinke.iocontroller;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface IOExecutor {
+    /**
+     Queue a task for the thread that owns the controller
+     @param task commands to run on the controller
+     @return future completed with the result of the task or the exception it threw
+     */
+    <T> CompletableFuture<T> submit(IOTask<T> task);
+}
@@ -0,0 +1,418 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortTimeoutException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+public class IOGateway implements AutoCloseable {
+
+    public static final int DEFAULT_PORT = 4144;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int IN_BUFFER_SIZE = 4096;
+    private static final int OUT_BUFFER_SIZE = 64 << 10;
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+    private final InputScanner scanner;
+    private final int port;
+    private final ConcurrentLinkedQueue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final CopyOnWriteArrayList<Connection> subscribers = new CopyOnWriteArrayList<>();
+    private final DigitalInputListener inputListener = this::digitalInputChanged;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private AsyncIOController executor;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile long requestCount;
+
+    public IOGateway(IOControllerImpl io, int port) {
+        this(io, null, port);
+    }
+
+    /**
+     TCP server that lets remote IOGatewayClients share one controller
+     Requests are fixed size binary frames that carry an id, a client may send many without waiting,
+     the response carries the id of its request. Commands of all connections are queued for one I/O thread
+     that runs them back to back in sessions. Responses are written by the I/O thread as the commands complete,
+     the selector thread only accepts connections and reads requests
+     A connection can subscribe to the edges on the digital inputs found by an InputScanner
+     @param io controller, the serial port must be opened
+     @param scanner scanner of the digital inputs, null without subscriptions
+     @param port TCP port to listen on, 0 for any free port
+     */
+    public IOGateway(IOControllerImpl io, InputScanner scanner, int port) {
+        this.io = io;
+        this.scanner = scanner;
+        this.port = port;
+    }
+
+    /**
+     Listen for clients
+     @throws IOException when the port cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        executor = new AsyncIOController(io, QUEUE_CAPACITY, AsyncIOController.OverflowPolicy.REJECT);
+        if (scanner != null) {
+            scanner.addListener(inputListener);
+        }
+        running = true;
+        thread = new Thread(this::run, "IOGateway-"+getPort());
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info(() -> "Gateway listening on port "+getPort());
+    }
+
+    /**
+     Close all connections and stop listening, queued commands are executed first
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        if (scanner != null) {
+            scanner.removeListener(inputListener);
+        }
+        executor.close();
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            server.close();
+            selector.close();
+        } catch (IOException e) {
+            LOG.info(e.getMessage());
+        }
+        LOG.info("Gateway stopped");
+    }
+
+    /**
+     @return TCP port the gateway listens on, the given port until started
+     */
+    public int getPort() {
+        ServerSocketChannel channel = server;
+        if (channel != null && channel.isOpen()) {
+            return channel.socket().getLocalPort();
+        }
+        return port;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+                Connection connection;
+                while ((connection = pendingWrites.poll()) != null) {
+                    connection.awaitWritable();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.writePending();
+                        }
+                    } catch (CancelledKeyException e) {
+                        // the connection was closed by the I/O thread meanwhile
+                        LOG.fine("Gateway key cancelled");
+                    }
+                }
+            } catch (IOException e) {
+                LOG.info(() -> "Gateway failed : "+e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        connectionCount.incrementAndGet();
+        LOG.info(() -> "Gateway client connected from "+channel.socket().getRemoteSocketAddress());
+    }
+
+    /**
+     Handle one request, called on the selector thread
+     */
+    private void request(Connection connection, int opcode, int channel, int value, int id) {
+        requestCount++;
+        switch (opcode) {
+            case GatewayProtocol.INFO:
+                connection.send(GatewayProtocol.OK, 0, id, io.getIoAddress());
+                return;
+            case GatewayProtocol.SUBSCRIBE:
+                if (scanner == null) {
+                    connection.send(GatewayProtocol.FAILED, 0, id, 0);
+                    return;
+                }
+                if (!connection.subscribed) {
+                    connection.subscribed = true;
+                    subscribers.add(connection);
+                }
+                connection.send(GatewayProtocol.OK, 0, id, scanner.getInputs());
+                return;
+            case GatewayProtocol.UNSUBSCRIBE:
+                connection.subscribed = false;
+                subscribers.remove(connection);
+                connection.send(GatewayProtocol.OK, 0, id, 0);
+                return;
+            default:
+                IOTask<Integer> task = task(opcode, channel, value);
+                if (task == null) {
+                    connection.send(GatewayProtocol.FAILED, 0, id, 0);
+                    return;
+                }
+                executor.submit(task).whenComplete((result, e) -> {
+                    if (e == null) {
+                        connection.send(GatewayProtocol.OK, 0, id, result);
+                    } else {
+                        connection.send(kind(e), 0, id, 0);
+                    }
+                });
+        }
+    }
+
+    private static IOTask<Integer> task(int opcode, int channel, int value) {
+        switch (opcode) {
+            case GatewayProtocol.RESET_CONTROLLER:
+                return c -> { c.resetController(); return 0; };
+            case GatewayProtocol.SET_LOCAL_MODE:
+                return c -> { c.setLocalMode(value); return 0; };
+            case GatewayProtocol.SET_ECHO_MODE:
+                return c -> { c.setEchoMode(value); return 0; };
+            case GatewayProtocol.SET_ALL_DIGITAL_OUTPUTS:
+                return c -> { c.setAllDigitalOutputs(value); return 0; };
+            case GatewayProtocol.SET_BLOCK_CONNECTION:
+                return c -> { c.setBlockConnection(channel, value); return 0; };
+            case GatewayProtocol.GET_BLOCK_CONNECTION:
+                return c -> c.getBlockConnection(channel);
+            case GatewayProtocol.SET_LOGICAL_LEVEL_DIGITAL_OUTPUT:
+                return c -> { c.setLogicalLevelDigitalOutput(channel, value); return 0; };
+            case GatewayProtocol.GET_LOGICAL_LEVEL_DIGITAL_OUTPUT:
+                return c -> c.getLogicalLevelDigitalOutput(channel);
+            case GatewayProtocol.SET_BYTE_DIGITAL_OUTPUT_BLOCK:
+                return c -> { c.setByteDigitalOutputBlock(channel, value); return 0; };
+            case GatewayProtocol.GET_BYTE_DIGITAL_OUTPUT_BLOCK:
+                return c -> c.getByteDigitalOutputBlock(channel);
+            case GatewayProtocol.GET_BYTE_DIGITAL_INPUT_BLOCK:
+                return c -> c.getByteDigitalInputBlock(channel);
+            case GatewayProtocol.GET_LOGICAL_LEVEL_DIGITAL_INPUT:
+                return c -> c.getLogicalLevelDigitalInput(channel);
+            case GatewayProtocol.SET_VOLTAGE_ANALOG_OUTPUT:
+                return c -> { c.setVoltageAnalogOutput(channel, value); return 0; };
+            case GatewayProtocol.GET_VOLTAGE_ANALOG_OUTPUT:
+                return c -> GatewayProtocol.hundredths(c.getVoltageAnalogOutput(channel));
+            case GatewayProtocol.GET_VOLTAGE_ANALOG_INPUT:
+                return c -> GatewayProtocol.hundredths(c.getVoltageAnalogInput(channel));
+            default:
+                return null;
+        }
+    }
+
+    private static int kind(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof SerialPortTimeoutException) {
+            return GatewayProtocol.TIMEOUT;
+        }
+        if (cause instanceof RejectedExecutionException) {
+            return GatewayProtocol.REJECTED;
+        }
+        return GatewayProtocol.FAILED;
+    }
+
+    /**
+     Send an input edge to the subscribed connections, called on the scanner thread
+     */
+    private void digitalInputChanged(int digitalInput, int logicalLevel, long timestampNanos) {
+        for (Connection connection : subscribers) {
+            connection.send(GatewayProtocol.EVENT, digitalInput, 0, logicalLevel);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IOGateway{"+
+                "ioAddress="+io.getIoAddress()+
+                ", port="+getPort()+
+                '}';
+    }
+
+    /**
+     Client connection with its partly received request and its unsent frames
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(IN_BUFFER_SIZE);
+        final ByteBuffer out = ByteBuffer.allocate(OUT_BUFFER_SIZE);
+        volatile boolean subscribed;
+        private boolean closed;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /**
+         Read the requests that arrived, called on the selector thread
+         */
+        void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    close();
+                    return;
+                }
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= GatewayProtocol.REQUEST_SIZE) {
+                int opcode = in.get() & 0xFF;
+                int channelNumber = GatewayProtocol.channel(in.get());
+                int value = in.getShort();
+                int id = in.getInt();
+                request(this, opcode, channelNumber, value, id);
+            }
+            in.compact();
+        }
+
+        /**
+         Queue a frame and write what the socket takes, the rest is written by the selector thread
+         A client that does not keep up with its responses and events is disconnected
+         */
+        synchronized void send(int kind, int channelNumber, int id, int value) {
+            if (closed) {
+                return;
+            }
+            if (out.remaining() < GatewayProtocol.FRAME_SIZE) {
+                LOG.info("Gateway client does not read its responses, disconnected");
+                close();
+                return;
+            }
+            boolean idle = out.position() == 0;
+            GatewayProtocol.putFrame(out, kind, channelNumber, id, value);
+            if (idle && !flush()) {
+                pendingWrites.add(this);
+                selector.wakeup();
+            }
+        }
+
+        /**
+         Write the unsent frames, called on the selector thread when the socket takes more
+         */
+        synchronized void writePending() {
+            if (!closed && flush() && !closed) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         Let the selector thread write the unsent frames when the socket takes more
+         Locked like send() and close(), so the key is not cancelled in between
+         */
+        synchronized void awaitWritable() {
+            if (!closed) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         @return true when all frames are written
+         */
+        private boolean flush() {
+            out.flip();
+            try {
+                channel.write(out);
+            } catch (IOException e) {
+                out.clear();
+                close();
+                return true;
+            }
+            out.compact();
+            return out.position() == 0;
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            subscribed = false;
+            subscribers.remove(this);
+            connectionCount.decrementAndGet();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.info(e.getMessage());
+            }
+            LOG.info("Gateway client disconnected");
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+public class IOGatewayClient implements IOController, AutoCloseable {
+
+    private static final int RESPONSE_TIMEOUT_MS = 35000;
+    private static final int IN_BUFFER_SIZE = 4096;
+    private static final Logger LOG = Logger.getGlobal();
+    private String serialDevice;
+    private volatile int ioAddress = -1;
+    private final Map<Integer, CompletableFuture<Integer>> pending = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<DigitalInputListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ByteBuffer requestBuffer = ByteBuffer.allocate(GatewayProtocol.REQUEST_SIZE);
+    private volatile SocketChannel socket;
+    private Thread reader;
+
+    public IOGatewayClient(String host) {
+        this(host, IOGateway.DEFAULT_PORT);
+    }
+
+    /**
+     Controller behind an IOGateway on another host
+     Calls from several threads are pipelined on one connection, every call waits for its own response
+     The serial device of this controller is the address of the gateway, host:port
+     @param host host name or address of the gateway
+     @param port TCP port of the gateway
+     */
+    public IOGatewayClient(String host, int port) {
+        this.serialDevice = host+":"+port;
+    }
+
+    @Override
+    public String getSerialDevice() {
+        return serialDevice;
+    }
+
+    /**
+     Set the gateway address, used on the next openSerialPort()
+     @param serialDevice gateway address host:port
+     */
+    @Override
+    public void setSerialDevice(String serialDevice) {
+        this.serialDevice = serialDevice;
+    }
+
+    /**
+     @return device address of the controller behind the gateway, -1 until connected
+     */
+    @Override
+    public int getIoAddress() {
+        return ioAddress;
+    }
+
+    /**
+     The device address is set on the gateway, not by its clients
+     */
+    @Override
+    public void setIOAddress(int ioAddress) {
+        LOG.info("Device address is set on the gateway");
+    }
+
+    /**
+     Connect to the gateway, a client that is already connected stays on its connection
+     When the gateway does not answer the connection is closed again and the client is not connected
+     */
+    @Override
+    public synchronized void openSerialPort() {
+        if (socket != null) {
+            LOG.info(() -> "Already connected to gateway on "+serialDevice);
+            return;
+        }
+        int separator = serialDevice.lastIndexOf(':');
+        SocketChannel channel = null;
+        try {
+            String host = separator < 0 ? serialDevice : serialDevice.substring(0, separator);
+            int port = separator < 0 ? IOGateway.DEFAULT_PORT : Integer.parseInt(serialDevice.substring(separator + 1));
+            channel = SocketChannel.open(new InetSocketAddress(host, port));
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SocketChannel connected = channel;
+            socket = connected;
+            reader = new Thread(() -> read(connected), "IOGatewayClient-"+serialDevice);
+            reader.setDaemon(true);
+            reader.start();
+            ioAddress = call(GatewayProtocol.INFO, 0, 0, "openSerialPort()");
+            LOG.info(() -> "Connected to gateway on "+serialDevice);
+        } catch (IOException | NumberFormatException | SerialPortException | SerialPortTimeoutException e) {
+            LOG.info(e.getMessage());
+            if (channel != null) {
+                try {
+                    disconnect(channel);
+                } catch (IOException closeFailed) {
+                    LOG.info(closeFailed.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     Disconnect from the gateway, calls that wait for a response fail
+     @throws SerialPortException when not connected
+     */
+    @Override
+    public synchronized void closeSerialPort() throws SerialPortException {
+        SocketChannel channel = socket;
+        if (channel == null) {
+            throw new SerialPortException(serialDevice, "closeSerialPort()", SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+        try {
+            disconnect(channel);
+        } catch (IOException e) {
+            throw new SerialPortException(serialDevice, "closeSerialPort()", e.getMessage());
+        }
+        LOG.info("Disconnected from gateway");
+    }
+
+    /**
+     Close the channel and wait for the reader thread, which fails the calls that still wait
+     */
+    private void disconnect(SocketChannel channel) throws IOException {
+        socket = null;
+        ioAddress = -1;
+        channel.close();
+        try {
+            if (reader != null) {
+                reader.join();
+                reader = null;
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws SerialPortException {
+        if (socket != null) {
+            closeSerialPort();
+        }
+    }
+
+    public boolean isConnected() {
+        return socket != null;
+    }
+
+    /**
+     Subscribe to the edges on the digital inputs, the gateway needs an InputScanner for this
+     Listeners are called on the thread that reads the responses, they should not call the gateway themselves
+     @param listener listener to add
+     @return digital inputs of the last scan on the gateway, digital input 0 in bit 0
+     @throws SerialPortException when the gateway has no InputScanner or the connection failed
+     @throws SerialPortTimeoutException no response from the gateway
+     */
+    public int addListener(DigitalInputListener listener) throws SerialPortException, SerialPortTimeoutException {
+        listeners.add(listener);
+        try {
+            return call(GatewayProtocol.SUBSCRIBE, 0, 0, "addListener()");
+        } catch (SerialPortException | SerialPortTimeoutException e) {
+            listeners.remove(listener);
+            throw e;
+        }
+    }
+
+    /**
+     Remove a listener, the subscription ends with the last listener
+     @param listener listener to remove
+     @throws SerialPortException exception that might occur on the connection
+     */
+    public void removeListener(DigitalInputListener listener) throws SerialPortException {
+        if (listeners.remove(listener) && listeners.isEmpty()) {
+            command(GatewayProtocol.UNSUBSCRIBE, 0, 0, "removeListener()");
+        }
+    }
+
+    @Override
+    public void resetController() throws SerialPortException {
+        command(GatewayProtocol.RESET_CONTROLLER, 0, 0, "resetController()");
+    }
+
+    @Override
+    public void setLocalMode(int localSwitch) throws SerialPortException {
+        command(GatewayProtocol.SET_LOCAL_MODE, 0, localSwitch, "setLocalMode()");
+    }
+
+    @Override
+    public void setEchoMode(int echoSwitch) throws SerialPortException {
+        command(GatewayProtocol.SET_ECHO_MODE, 0, echoSwitch, "setEchoMode()");
+    }
+
+    @Override
+    public void setAllDigitalOutputs(int stateSwitch) throws SerialPortException {
+        command(GatewayProtocol.SET_ALL_DIGITAL_OUTPUTS, 0, stateSwitch, "setAllDigitalOutputs()");
+    }
+
+    @Override
+    public void setBlockConnection(int block, int connectionSwitch) throws SerialPortException {
+        command(GatewayProtocol.SET_BLOCK_CONNECTION, block, connectionSwitch, "setBlockConnection()");
+    }
+
+    @Override
+    public int getBlockConnection(int block) throws SerialPortException, SerialPortTimeoutException {
+        return call(GatewayProtocol.GET_BLOCK_CONNECTION, block, 0, "getBlockConnection()");
+    }
+
+    @Override
+    public void setLogicalLevelDigitalOutput(int digitalOutput, int logicalLevel) throws SerialPortException {
+        command(GatewayProtocol.SET_LOGICAL_LEVEL_DIGITAL_OUTPUT, digitalOutput, logicalLevel, "setLogicalLevelDigitalOutput()");
+    }
+
+    @Override
+    public int getLogicalLevelDigitalOutput(int digitalOutput) throws SerialPortException, SerialPortTimeoutException {
+        return call(GatewayProtocol.GET_LOGICAL_LEVEL_DIGITAL_OUTPUT, digitalOutput, 0, "getLogicalLevelDigitalOutput()");
+    }
+
+    @Override
+    public void setByteDigitalOutputBlock(int digitalOutputBlock, int byteValue) throws SerialPortException {
+        command(GatewayProtocol.SET_BYTE_DIGITAL_OUTPUT_BLOCK, digitalOutputBlock, byteValue, "setByteDigitalOutputBlock()");
+    }
+
+    @Override
+    public int getByteDigitalOutputBlock(int digitalOutputBlock) throws SerialPortException, SerialPortTimeoutException {
+        return call(GatewayProtocol.GET_BYTE_DIGITAL_OUTPUT_BLOCK, digitalOutputBlock, 0, "getByteDigitalOutputBlock()");
+    }
+
+    @Override
+    public int getByteDigitalInputBlock(int digitalInputBlock) throws SerialPortException, SerialPortTimeoutException {
+        return call(GatewayProtocol.GET_BYTE_DIGITAL_INPUT_BLOCK, digitalInputBlock, 0, "getByteDigitalInputBlock()");
+    }
+
+    @Override
+    public int getLogicalLevelDigitalInput(int digitalInput) throws SerialPortException, SerialPortTimeoutException {
+        return call(GatewayProtocol.GET_LOGICAL_LEVEL_DIGITAL_INPUT, digitalInput, 0, "getLogicalLevelDigitalInput()");
+    }
+
+    @Override
+    public void setVoltageAnalogOutput(int analogOutput, int voltage) throws SerialPortException {
+        command(GatewayProtocol.SET_VOLTAGE_ANALOG_OUTPUT, analogOutput, voltage, "setVoltageAnalogOutput()");
+    }
+
+    @Override
+    public double getVoltageAnalogOutput(int analogOutput) throws SerialPortException, SerialPortTimeoutException {
+        return call(GatewayProtocol.GET_VOLTAGE_ANALOG_OUTPUT, analogOutput, 0, "getVoltageAnalogOutput()") / 100.0;
+    }
+
+    @Override
+    public double getVoltageAnalogInput(int analogInput) throws SerialPortException, SerialPortTimeoutException {
+        return call(GatewayProtocol.GET_VOLTAGE_ANALOG_INPUT, analogInput, 0, "getVoltageAnalogInput()") / 100.0;
+    }
+
+    /**
+     Send a command without result, a timeout is reported as SerialPortException
+     */
+    private void command(int opcode, int channel, int value, String methodName) throws SerialPortException {
+        try {
+            call(opcode, channel, value, methodName);
+        } catch (SerialPortTimeoutException e) {
+            throw new SerialPortException(serialDevice, methodName, "No response from gateway");
+        }
+    }
+
+    /**
+     Send a request and wait for its response, other threads may send their requests meanwhile
+     @return value of the response
+     */
+    private int call(int opcode, int channel, int value, String methodName) throws SerialPortException, SerialPortTimeoutException {
+        SocketChannel channelToGateway = socket;
+        if (channelToGateway == null) {
+            throw new SerialPortException(serialDevice, methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+        int id = nextId.incrementAndGet();
+        CompletableFuture<Integer> response = new CompletableFuture<>();
+        pending.put(id, response);
+        try {
+            if (socket != channelToGateway) {
+                // The reader may have failed the pending calls before this one was registered
+                throw new SerialPortException(serialDevice, methodName, "Connection to gateway closed");
+            }
+            synchronized (requestBuffer) {
+                requestBuffer.clear();
+                GatewayProtocol.putRequest(requestBuffer, opcode, channel, value, id);
+                requestBuffer.flip();
+                while (requestBuffer.hasRemaining()) {
+                    channelToGateway.write(requestBuffer);
+                }
+            }
+            return response.get(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            throw new SerialPortException(serialDevice, methodName, e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SerialPortTimeoutException) {
+                throw new SerialPortTimeoutException(serialDevice, methodName, RESPONSE_TIMEOUT_MS);
+            }
+            throw new SerialPortException(serialDevice, methodName, e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            throw new SerialPortTimeoutException(serialDevice, methodName, RESPONSE_TIMEOUT_MS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SerialPortException(serialDevice, methodName, SerialPortException.TYPE_LISTENER_THREAD_INTERRUPTED);
+        } finally {
+            pending.remove(id);
+        }
+    }
+
+    /**
+     Read frames from the gateway until the connection closes
+     */
+    private void read(SocketChannel channel) {
+        ByteBuffer in = ByteBuffer.allocate(IN_BUFFER_SIZE);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= GatewayProtocol.FRAME_SIZE) {
+                    int kind = in.get();
+                    int channelNumber = in.get() & 0xFF;
+                    int id = in.getInt();
+                    int value = in.getInt();
+                    if (kind == GatewayProtocol.EVENT) {
+                        fire(channelNumber, value);
+                    } else {
+                        complete(id, kind, value);
+                    }
+                }
+                in.compact();
+            }
+        } catch (IOException e) {
+            if (socket != null) {
+                LOG.info(() -> "Connection to gateway failed : "+e.getMessage());
+            }
+        }
+        socket = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.fine(e.getMessage());
+        }
+        SerialPortException closed = new SerialPortException(serialDevice, "read()", "Connection to gateway closed");
+        for (CompletableFuture<Integer> response : pending.values()) {
+            response.completeExceptionally(closed);
+        }
+    }
+
+    private void complete(int id, int kind, int value) {
+        CompletableFuture<Integer> response = pending.get(id);
+        if (response == null) {
+            return;
+        }
+        switch (kind) {
+            case GatewayProtocol.OK:
+                response.complete(value);
+                break;
+            case GatewayProtocol.TIMEOUT:
+                response.completeExceptionally(new SerialPortTimeoutException(serialDevice, "gateway", RESPONSE_TIMEOUT_MS));
+                break;
+            case GatewayProtocol.REJECTED:
+                response.completeExceptionally(new SerialPortException(serialDevice, "gateway", "Gateway queue full"));
+                break;
+            default:
+                response.completeExceptionally(new SerialPortException(serialDevice, "gateway", "Command failed on gateway"));
+        }
+    }
+
+    private void fire(int digitalInput, int logicalLevel) {
+        long now = System.nanoTime();
+        for (DigitalInputListener listener : listeners) {
+            try {
+                listener.digitalInputChanged(digitalInput, logicalLevel, now);
+            } catch (RuntimeException e) {
+                LOG.info(() -> "Digital input listener failed : "+e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IOGatewayClient{"+
+                "serialDevice='"+serialDevice+'\''+
+                ", ioAddress="+ioAddress+
+                '}';
+    }
+}
@@ -0,0 +1,10 @@
+package etenbrinke.iocontroller;
+
+public interface IOLinkListener {
+    /**
+     Called on the monitor thread when the link to the controller is lost or restored
+     @param state DOWN when the link is lost, UP when it is reconnected and the controller state is restored
+     @param downtimeNanos nanoseconds from the detection of the loss until the restore, 0 when the link goes down
+     */
+    void linkStateChanged(IOLinkMonitor.LinkState state, long downtimeNanos);
+}
@@ -0,0 +1,209 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+public class IOLinkMonitor {
+
+    /**
+     State of the link to the controller
+     */
+    public enum LinkState {
+        /** the controller answers */
+        UP,
+        /** the link is lost, it is being reconnected */
+        DOWN
+    }
+
+    public static final long DEFAULT_CHECK_PERIOD_MILLIS = 100;
+    public static final int DEFAULT_CHECK_TIMEOUT_MILLIS = 250;
+    private static final int BACKOFF_MIN_MS = 10;
+    private static final int BACKOFF_MAX_MS = 250;
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+    private final long checkPeriodNanos;
+    private final int checkTimeoutMillis;
+    private final CopyOnWriteArrayList<IOLinkListener> listeners = new CopyOnWriteArrayList<>();
+    private final LatencyHistogram downtime = new LatencyHistogram();
+    private volatile LinkState linkState = LinkState.UP;
+    private volatile boolean restoreState = true;
+    private volatile long downCount;
+    private volatile long lastDowntimeNanos;
+    private volatile boolean running;
+    private Thread thread;
+
+    public IOLinkMonitor(IOControllerImpl io) {
+        this(io, DEFAULT_CHECK_PERIOD_MILLIS, DEFAULT_CHECK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     Monitor of the link to a controller that reconnects the serial port when the link is lost
+     Every check period the controller is asked for its status. When the port fails or the controller does not
+     answer within the check timeout, the link is DOWN: the serial port is closed and opened again with a doubling
+     backoff of 10 up to 250 ms until the controller answers. Then the modes, block connections and outputs last
+     commanded are sent again and the link is UP
+     The monitor locks the controller, other threads using it concurrently have to synchronize on it as well
+     @param io controller, the serial port does not have to be opened
+     @param checkPeriodMillis time between checks
+     @param checkTimeoutMillis maximum wait for the status of the controller in a check
+     */
+    public IOLinkMonitor(IOControllerImpl io, long checkPeriodMillis, int checkTimeoutMillis) {
+        this.io = io;
+        this.checkPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, checkPeriodMillis));
+        this.checkTimeoutMillis = Math.max(1, checkTimeoutMillis);
+    }
+
+    public void addListener(IOLinkListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(IOLinkListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     @param restoreState true to send the state last commanded again after a reconnect, the default
+     */
+    public void setRestoreState(boolean restoreState) {
+        this.restoreState = restoreState;
+    }
+
+    public boolean isRestoreState() {
+        return restoreState;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "IOLinkMonitor-"+io.getIoAddress());
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Link monitor started");
+    }
+
+    /**
+     Stop monitoring, a reconnect in progress is given up
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info("Link monitor stopped");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public LinkState getLinkState() {
+        return linkState;
+    }
+
+    /**
+     @return number of times the link was lost
+     */
+    public long getDownCount() {
+        return downCount;
+    }
+
+    /**
+     @return nanoseconds from the detection of the last loss until the restore
+     */
+    public long getLastDowntimeNanos() {
+        return lastDowntimeNanos;
+    }
+
+    /**
+     @return histogram of the downtimes
+     */
+    public LatencyHistogram getDowntime() {
+        return downtime.copy();
+    }
+
+    private void run() {
+        long deadline = System.nanoTime();
+        while (running) {
+            deadline += checkPeriodNanos;
+            long wait;
+            while (running && (wait = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!running) {
+                break;
+            }
+            try {
+                synchronized (io) {
+                    io.checkLink(checkTimeoutMillis);
+                }
+            } catch (SerialPortException e) {
+                LOG.info(() -> "Link to controller lost : "+e.getMessage());
+                reconnect();
+                deadline = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     Reopen the serial port until the controller answers, then restore its state
+     */
+    private void reconnect() {
+        long lost = System.nanoTime();
+        downCount++;
+        linkState = LinkState.DOWN;
+        fire(LinkState.DOWN, 0);
+        int backoffMs = BACKOFF_MIN_MS;
+        while (running) {
+            try {
+                synchronized (io) {
+                    io.reopenSerialPort();
+                    io.checkLink(checkTimeoutMillis);
+                    if (restoreState) {
+                        io.restoreState();
+                    }
+                }
+                long downtimeNanos = System.nanoTime() - lost;
+                lastDowntimeNanos = downtimeNanos;
+                downtime.record(downtimeNanos);
+                linkState = LinkState.UP;
+                LOG.info(() -> "Link to controller restored after "+TimeUnit.NANOSECONDS.toMillis(downtimeNanos)+" ms");
+                fire(LinkState.UP, downtimeNanos);
+                return;
+            } catch (SerialPortException e) {
+                LOG.fine(() -> "Reconnect failed : "+e.getMessage());
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoffMs));
+            backoffMs = Math.min(backoffMs * 2, BACKOFF_MAX_MS);
+        }
+    }
+
+    private void fire(LinkState state, long downtimeNanos) {
+        for (IOLinkListener listener : listeners) {
+            try {
+                listener.linkStateChanged(state, downtimeNanos);
+            } catch (RuntimeException e) {
+                LOG.info(() -> "Link listener failed : "+e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IOLinkMonitor{"+
+                "ioAddress="+io.getIoAddress()+
+                ", linkState="+linkState+
+                '}';
+    }
+}
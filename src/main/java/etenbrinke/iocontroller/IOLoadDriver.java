@@ -0,0 +1,362 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class IOLoadDriver {
+
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOLoadScenario scenario;
+    private final List<SerialTransport> transports = new ArrayList<>();
+    private final List<IOControllerImpl> controllers = new ArrayList<>();
+    private final EnumMap<IOMetrics.Command, LatencyHistogram> commandLatencies = new EnumMap<>(IOMetrics.Command.class);
+    private volatile Interval interval;
+    private volatile boolean running;
+
+    /**
+     Load driver that runs a scenario of concurrent callers against controllers on one or more serial ports
+     Every port gets the threads of the scenario, spread round robin over its addresses. A thread sends commands
+     drawn from the command mix, at its rate or as fast as the port allows. The commands of one port are
+     serialized, so the latency of a command holds its wait for the port. With a rate the latency is measured from
+     the time the command was due, so a port that falls behind shows in the latency instead of a lower rate
+     Every report interval one JSON line with throughput, latency percentiles, timeouts, errors and ready polls
+     is written, at the end one summary line with the totals and the latency per command type. A command counts
+     in the interval it completes in, the summary holds the exact sum of the interval lines
+     @param scenario scenario
+     */
+    public IOLoadDriver(IOLoadScenario scenario) {
+        this.scenario = scenario;
+        for (IOMetrics.Command command : IOMetrics.Command.values()) {
+            commandLatencies.put(command, new LatencyHistogram());
+        }
+    }
+
+    /**
+     Run the scenario: open the ports, warm up, measure and close the ports
+     @param report stream the JSON lines are written to
+     @throws SerialPortException exception that might occur in Serial interface while closing the ports
+     */
+    public void run(PrintStream report) throws SerialPortException {
+        open();
+        List<Thread> threads = new ArrayList<>();
+        running = true;
+        for (int port = 0; port < transports.size(); port++) {
+            for (int t = 0; t < scenario.getThreads(); t++) {
+                SerialTransport transport = transports.get(port);
+                IOControllerImpl io = controllers.get(port * scenario.getAddresses().length + t % scenario.getAddresses().length);
+                Thread thread = new Thread(() -> drive(transport, io), "IOLoadDriver-"+transport.getPortName()+"-"+t);
+                thread.setDaemon(true);
+                threads.add(thread);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        sleepNanos(TimeUnit.SECONDS.toNanos(scenario.getWarmupSeconds()));
+        long readyPollsAtStart = getReadyPolls();
+        long readyPolls = readyPollsAtStart;
+        interval = new Interval();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(scenario.getDurationSeconds());
+        long periodNanos = TimeUnit.MILLISECONDS.toNanos(scenario.getReportIntervalMillis());
+        LatencyHistogram total = new LatencyHistogram();
+        long totalTimeouts = 0;
+        long totalErrors = 0;
+        long last = start;
+        for (long next = start + periodNanos; last < end; next += periodNanos) {
+            long due = Math.min(next, end);
+            sleepNanos(due - System.nanoTime());
+            Interval done = interval;
+            // after the last interval the drivers stop recording
+            interval = due == end ? null : new Interval();
+            long now = System.nanoTime();
+            long polls = getReadyPolls();
+            // a driver that entered the interval before the swap records into it, the swap is only done when it left
+            while (done.writers.get() > 0) {
+                Thread.yield();
+            }
+            report.println(line(done.latency, done.timeouts.get(), done.errors.get(), polls - readyPolls, now - last)
+                    .insert(1, "\"elapsedMillis\":"+TimeUnit.NANOSECONDS.toMillis(now - start)+",")
+                    .append('}'));
+            report.flush();
+            total.merge(done.latency);
+            totalTimeouts += done.timeouts.get();
+            totalErrors += done.errors.get();
+            readyPolls = polls;
+            last = now;
+        }
+        running = false;
+        for (Thread thread : threads) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        report.println(summary(total, totalTimeouts, totalErrors, readyPolls - readyPollsAtStart, last - start));
+        report.flush();
+        close();
+    }
+
+    private void open() {
+        for (String port : scenario.getPorts()) {
+            SerialTransport transport = scenario.isSimulated()
+                    ? new IOControllerSimulator(port, scenario.getBaudRate(), scenario.getTurnaroundMicros())
+                    : new JsscSerialTransport(port);
+            transports.add(transport);
+            for (int ioAddress : scenario.getAddresses()) {
+                IOControllerImpl io = new IOControllerImpl(transport, ioAddress);
+                io.openSerialPort();
+                controllers.add(io);
+            }
+        }
+        LOG.info(() -> "Load driver opened "+controllers.size()+" controllers on "+transports.size()+" ports");
+    }
+
+    private void close() throws SerialPortException {
+        for (SerialTransport transport : transports) {
+            if (transport.isOpened()) {
+                transport.closePort();
+            }
+        }
+    }
+
+    /**
+     Caller thread, the commands of a port are serialized on its transport
+     */
+    private void drive(SerialTransport transport, IOControllerImpl io) {
+        SplittableRandom random = new SplittableRandom();
+        double rate = scenario.getRatePerThread();
+        long periodNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        long due = System.nanoTime() + (periodNanos > 0 ? random.nextLong(periodNanos) : 0);
+        while (running) {
+            if (periodNanos > 0) {
+                long wait;
+                while (running && (wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                due = System.nanoTime();
+            }
+            if (!running) {
+                break;
+            }
+            IOMetrics.Command command = scenario.pick(random.nextInt(scenario.getMixTotal()));
+            try {
+                synchronized (transport) {
+                    execute(io, command, random);
+                }
+                long latency = System.nanoTime() - due;
+                Interval current = enter();
+                if (current != null) {
+                    current.latency.record(latency);
+                    commandLatencies.get(command).record(latency);
+                    current.writers.decrementAndGet();
+                }
+            } catch (SerialPortTimeoutException e) {
+                Interval current = enter();
+                if (current != null) {
+                    current.timeouts.incrementAndGet();
+                    current.writers.decrementAndGet();
+                }
+            } catch (SerialPortException e) {
+                Interval current = enter();
+                if (current != null) {
+                    current.errors.incrementAndGet();
+                    current.writers.decrementAndGet();
+                }
+                LOG.fine(() -> "Load command failed : "+e.getMessage());
+            }
+            due += periodNanos;
+        }
+    }
+
+    /**
+     Enter the current interval to record into it, the caller leaves it by decrementing its writers
+     A driver that entered an interval the reporter swapped out in the meantime leaves it and enters the new one
+     @return current interval, null while not measuring
+     */
+    private Interval enter() {
+        while (true) {
+            Interval current = interval;
+            if (current == null) {
+                return null;
+            }
+            current.writers.incrementAndGet();
+            if (interval == current) {
+                return current;
+            }
+            current.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     Send one command of the type with random parameters, modes are only switched off
+     */
+    private static void execute(IOControllerImpl io, IOMetrics.Command command, SplittableRandom random) throws SerialPortException, SerialPortTimeoutException {
+        switch (command) {
+            case RESET_CONTROLLER:
+                io.resetController();
+                break;
+            case SET_LOCAL_MODE:
+                io.setLocalMode(0);
+                break;
+            case SET_ECHO_MODE:
+                io.setEchoMode(0);
+                break;
+            case SET_ALL_DIGITAL_OUTPUTS:
+                io.setAllDigitalOutputs(random.nextInt(2));
+                break;
+            case SET_BLOCK_CONNECTION:
+                io.setBlockConnection(random.nextInt(4), random.nextInt(2));
+                break;
+            case GET_BLOCK_CONNECTION:
+                io.getBlockConnection(random.nextInt(4));
+                break;
+            case SET_LOGICAL_LEVEL_DIGITAL_OUTPUT:
+                io.setLogicalLevelDigitalOutput(random.nextInt(32), random.nextInt(2));
+                break;
+            case GET_LOGICAL_LEVEL_DIGITAL_OUTPUT:
+                io.getLogicalLevelDigitalOutput(random.nextInt(32));
+                break;
+            case SET_BYTE_DIGITAL_OUTPUT_BLOCK:
+                io.setByteDigitalOutputBlock(random.nextInt(4), random.nextInt(256));
+                break;
+            case GET_BYTE_DIGITAL_OUTPUT_BLOCK:
+                io.getByteDigitalOutputBlock(random.nextInt(4));
+                break;
+            case GET_BYTE_DIGITAL_INPUT_BLOCK:
+                io.getByteDigitalInputBlock(random.nextInt(4));
+                break;
+            case GET_LOGICAL_LEVEL_DIGITAL_INPUT:
+                io.getLogicalLevelDigitalInput(random.nextInt(32));
+                break;
+            case SET_VOLTAGE_ANALOG_OUTPUT:
+                io.setVoltageAnalogOutput(random.nextInt(4), random.nextInt(1024));
+                break;
+            case GET_VOLTAGE_ANALOG_OUTPUT:
+                io.getVoltageAnalogOutput(random.nextInt(4));
+                break;
+            default:
+                io.getVoltageAnalogInput(random.nextInt(8));
+        }
+    }
+
+    private long getReadyPolls() {
+        long readyPolls = 0;
+        for (IOControllerImpl io : controllers) {
+            readyPolls += io.getMetrics().getReadyPolls();
+        }
+        return readyPolls;
+    }
+
+    private StringBuilder line(LatencyHistogram latency, long timeouts, long errors, long readyPolls, long nanos) {
+        return new StringBuilder("{")
+                .append("\"scenario\":\"").append(scenario.getName().replace("\\", "\\\\").replace("\"", "\\\"")).append('"')
+                .append(",\"operations\":").append(latency.getCount())
+                .append(",\"throughput\":").append(String.format(Locale.ROOT, "%.1f", nanos > 0 ? latency.getCount() * 1e9 / nanos : 0))
+                .append(",\"meanMicros\":").append(String.format(Locale.ROOT, "%.1f", latency.getMeanNanos() / 1000))
+                .append(",\"p50Micros\":").append(micros(latency.getPercentileNanos(50)))
+                .append(",\"p90Micros\":").append(micros(latency.getPercentileNanos(90)))
+                .append(",\"p99Micros\":").append(micros(latency.getPercentileNanos(99)))
+                .append(",\"p999Micros\":").append(micros(latency.getPercentileNanos(99.9)))
+                .append(",\"maxMicros\":").append(micros(latency.getMaxNanos()))
+                .append(",\"timeouts\":").append(timeouts)
+                .append(",\"errors\":").append(errors)
+                .append(",\"readyPolls\":").append(readyPolls);
+    }
+
+    private String summary(LatencyHistogram total, long timeouts, long errors, long readyPolls, long nanos) {
+        StringBuilder line = line(total, timeouts, errors, readyPolls, nanos)
+                .insert(1, "\"summary\":true,\"ports\":"+transports.size()+",\"controllers\":"+controllers.size()
+                        +",\"threads\":"+transports.size() * scenario.getThreads()
+                        +",\"durationMillis\":"+TimeUnit.NANOSECONDS.toMillis(nanos)+",")
+                .append(",\"commands\":{");
+        boolean first = true;
+        for (Map.Entry<IOMetrics.Command, LatencyHistogram> entry : commandLatencies.entrySet()) {
+            LatencyHistogram latency = entry.getValue();
+            if (latency.getCount() == 0) {
+                continue;
+            }
+            line.append(first ? "" : ",").append('"').append(entry.getKey().name()).append("\":{")
+                    .append("\"count\":").append(latency.getCount())
+                    .append(",\"p50Micros\":").append(micros(latency.getPercentileNanos(50)))
+                    .append(",\"p99Micros\":").append(micros(latency.getPercentileNanos(99)))
+                    .append(",\"maxMicros\":").append(micros(latency.getMaxNanos()))
+                    .append('}');
+            first = false;
+        }
+        return line.append("}}").toString();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static void sleepNanos(long nanos) {
+        long end = System.nanoTime() + nanos;
+        long wait;
+        while ((wait = end - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     Load driver
+     Usage: IOLoadDriver scenario.properties [report.jsonl]
+     Without a report file the JSON lines are written to the standard output
+     */
+    public static void main(String[] args) throws IOException, SerialPortException {
+        if (args.length < 1) {
+            System.err.println("Usage: IOLoadDriver scenario.properties [report.jsonl]");
+            System.exit(2);
+        }
+        Logger.getGlobal().setLevel(Level.OFF);
+        IOLoadScenario scenario = IOLoadScenario.load(Paths.get(args[0]));
+        if (args.length < 2) {
+            new IOLoadDriver(scenario).run(System.out);
+            return;
+        }
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[1]));
+             PrintStream report = new PrintStream(out, false, "UTF-8")) {
+            new IOLoadDriver(scenario).run(report);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IOLoadDriver{"+
+                "scenario="+scenario.getName()+
+                ", controllers="+controllers.size()+
+                '}';
+    }
+
+    /**
+     Counts of one report interval
+     */
+    private static final class Interval {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong timeouts = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicInteger writers = new AtomicInteger();
+    }
+}
@@ -0,0 +1,199 @@
+package etenbrinke.iocontroller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+public final class IOLoadScenario {
+
+    private static final String NAME = "name";
+    private static final String PORTS = "ports";
+    private static final String SIMULATED = "simulated";
+    private static final String BAUD_RATE = "baudRate";
+    private static final String TURNAROUND_MICROS = "turnaroundMicros";
+    private static final String ADDRESSES = "addresses";
+    private static final String THREADS = "threads";
+    private static final String RATE = "ratePerThread";
+    private static final String DURATION = "durationSeconds";
+    private static final String WARMUP = "warmupSeconds";
+    private static final String REPORT_INTERVAL = "reportIntervalMillis";
+    private static final String MIX = "mix.";
+    private static final IOMetrics.Command[] COMMANDS = IOMetrics.Command.values();
+    private final String name;
+    private final List<String> ports;
+    private final boolean simulated;
+    private final int baudRate;
+    private final long turnaroundMicros;
+    private final int[] addresses;
+    private final int threads;
+    private final double ratePerThread;
+    private final long durationSeconds;
+    private final long warmupSeconds;
+    private final long reportIntervalMillis;
+    private final int[] mix;
+    private final int mixTotal;
+
+    private IOLoadScenario(Properties properties) {
+        name = properties.getProperty(NAME, "load");
+        List<String> portList = new ArrayList<>();
+        for (String port : properties.getProperty(PORTS, "simulator").split(",")) {
+            if (!port.trim().isEmpty()) {
+                portList.add(port.trim());
+            }
+        }
+        ports = Collections.unmodifiableList(portList);
+        simulated = Boolean.parseBoolean(properties.getProperty(SIMULATED, "true"));
+        baudRate = Integer.parseInt(properties.getProperty(BAUD_RATE, String.valueOf(IOControllerSimulator.DEFAULT_BAUD_RATE)));
+        turnaroundMicros = Long.parseLong(properties.getProperty(TURNAROUND_MICROS, String.valueOf(IOControllerSimulator.DEFAULT_TURNAROUND_MICROS)));
+        String[] addressList = properties.getProperty(ADDRESSES, "144").split(",");
+        addresses = new int[addressList.length];
+        for (int i = 0; i < addressList.length; i++) {
+            addresses[i] = Integer.parseInt(addressList[i].trim());
+        }
+        threads = Integer.parseInt(properties.getProperty(THREADS, "1"));
+        ratePerThread = Double.parseDouble(properties.getProperty(RATE, "0"));
+        durationSeconds = Long.parseLong(properties.getProperty(DURATION, "10"));
+        warmupSeconds = Long.parseLong(properties.getProperty(WARMUP, "0"));
+        reportIntervalMillis = Long.parseLong(properties.getProperty(REPORT_INTERVAL, "1000"));
+        mix = new int[COMMANDS.length];
+        int total = 0;
+        for (IOMetrics.Command command : COMMANDS) {
+            int weight = Integer.parseInt(properties.getProperty(MIX+command.name(), "0"));
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for "+command);
+            }
+            mix[command.ordinal()] = weight;
+            total += weight;
+        }
+        mixTotal = total;
+        if (ports.isEmpty() || addresses.length == 0 || threads < 1 || ratePerThread < 0 || durationSeconds < 1
+                || warmupSeconds < 0 || reportIntervalMillis < 1 || mixTotal == 0) {
+            throw new IllegalArgumentException("Scenario "+name+" needs ports, addresses, threads, a duration, "
+                    +"a report interval and at least one mix weight");
+        }
+    }
+
+    /**
+     Load a scenario from a properties file
+     name            name in the report, default load
+     ports           comma separated serial devices, every port gets the addresses, default simulator
+     simulated       true to drive an IOControllerSimulator per port instead of the device, default true
+     baudRate        baud rate of the simulated line, default 9600
+     turnaroundMicros turnaround of the simulated controllers, default 1000
+     addresses       comma separated device addresses on every port, default 144
+     threads         caller threads per port, spread over the addresses, default 1
+     ratePerThread   commands per second of every thread, 0 to send the next command when the last completes, default 0
+     durationSeconds measured time, default 10
+     warmupSeconds   time before the measurement, not reported, default 0
+     reportIntervalMillis time between two report lines, default 1000
+     mix.COMMAND     relative weight of an IOMetrics.Command in the command mix, e.g. mix.GET_BYTE_DIGITAL_INPUT_BLOCK=40
+     @param file scenario file
+     @return scenario
+     @throws IOException when the file cannot be read
+     @throws IllegalArgumentException when the file holds no number where one is expected or the scenario is incomplete
+     */
+    public static IOLoadScenario load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return new IOLoadScenario(properties);
+    }
+
+    /**
+     @param properties scenario properties, as in a scenario file
+     @return scenario
+     @throws IllegalArgumentException when a property holds no number where one is expected or the scenario is incomplete
+     */
+    public static IOLoadScenario of(Properties properties) {
+        return new IOLoadScenario(properties);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getPorts() {
+        return ports;
+    }
+
+    public boolean isSimulated() {
+        return simulated;
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public long getTurnaroundMicros() {
+        return turnaroundMicros;
+    }
+
+    public int[] getAddresses() {
+        return addresses.clone();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public double getRatePerThread() {
+        return ratePerThread;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public long getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public long getReportIntervalMillis() {
+        return reportIntervalMillis;
+    }
+
+    /**
+     @param command command type
+     @return relative weight of the command in the mix
+     */
+    public int getWeight(IOMetrics.Command command) {
+        return mix[command.ordinal()];
+    }
+
+    /**
+     Command of the mix for a uniform random number
+     @param draw number 0 up to the sum of the weights
+     @return command type
+     */
+    IOMetrics.Command pick(int draw) {
+        for (IOMetrics.Command command : COMMANDS) {
+            draw -= mix[command.ordinal()];
+            if (draw < 0) {
+                return command;
+            }
+        }
+        return COMMANDS[COMMANDS.length - 1];
+    }
+
+    int getMixTotal() {
+        return mixTotal;
+    }
+
+    @Override
+    public String toString() {
+        return "IOLoadScenario{"+
+                "name="+name+
+                ", ports="+ports+
+                ", simulated="+simulated+
+                ", threads="+threads+
+                ", ratePerThread="+ratePerThread+
+                ", durationSeconds="+durationSeconds+
+                '}';
+    }
+}
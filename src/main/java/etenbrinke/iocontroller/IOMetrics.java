@@ -0,0 +1,247 @@
+package etenbrinke.iocontroller;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IOMetrics implements IOMetricsMXBean {
+
+    /**
+     Command types of the controller, named after the IOCommands methods
+     */
+    public enum Command {
+        RESET_CONTROLLER,
+        SET_LOCAL_MODE,
+        SET_ECHO_MODE,
+        SET_ALL_DIGITAL_OUTPUTS,
+        SET_BLOCK_CONNECTION,
+        GET_BLOCK_CONNECTION,
+        SET_LOGICAL_LEVEL_DIGITAL_OUTPUT,
+        GET_LOGICAL_LEVEL_DIGITAL_OUTPUT,
+        SET_BYTE_DIGITAL_OUTPUT_BLOCK,
+        GET_BYTE_DIGITAL_OUTPUT_BLOCK,
+        GET_BYTE_DIGITAL_INPUT_BLOCK,
+        GET_LOGICAL_LEVEL_DIGITAL_INPUT,
+        SET_VOLTAGE_ANALOG_OUTPUT,
+        GET_VOLTAGE_ANALOG_OUTPUT,
+        GET_VOLTAGE_ANALOG_INPUT
+    }
+
+    private static final String DOMAIN = "etenbrinke.iocontroller";
+    private final IOControllerImpl io;
+    private final EnumMap<Command, LatencyHistogram> latencies = new EnumMap<>(Command.class);
+    private final AtomicLong readyPolls = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong driftRetries = new AtomicLong();
+    private final AtomicLong parseErrors = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private ObjectName objectName;
+
+    /**
+     Counters and per command latency histograms of one controller
+     Commands served from the output mirror do not reach the controller and are not counted
+     @param io controller the metrics belong to
+     */
+    IOMetrics(IOControllerImpl io) {
+        this.io = io;
+        for (Command command : Command.values()) {
+            latencies.put(command, new LatencyHistogram());
+        }
+    }
+
+    void recordCommand(Command command, long startNanos) {
+        latencies.get(command).record(System.nanoTime() - startNanos);
+    }
+
+    void incrementReadyPolls() {
+        readyPolls.incrementAndGet();
+    }
+
+    void incrementTimeouts() {
+        timeouts.incrementAndGet();
+    }
+
+    void incrementDriftRetries() {
+        driftRetries.incrementAndGet();
+    }
+
+    void incrementParseErrors() {
+        parseErrors.incrementAndGet();
+    }
+
+    void addBytesSent(int byteCount) {
+        bytesSent.addAndGet(byteCount);
+    }
+
+    void addBytesReceived(int byteCount) {
+        bytesReceived.addAndGet(byteCount);
+    }
+
+    /**
+     Register these metrics with the platform MBean server as
+     etenbrinke.iocontroller:type=IOController,port=serialDevice,address=ioAddress
+     @return name the metrics are registered under
+     @throws JMException when the MBean cannot be registered, e.g. the name is taken
+     */
+    public synchronized ObjectName registerMBean() throws JMException {
+        if (objectName == null) {
+            ObjectName name = new ObjectName(DOMAIN+":type=IOController,port="+ObjectName.quote(io.getSerialDevice())
+                    +",address="+io.getIoAddress());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        }
+        return objectName;
+    }
+
+    /**
+     Remove these metrics from the platform MBean server, if registered
+     @throws JMException when the MBean cannot be unregistered
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     @return copy of the current metrics that is not changed by later commands
+     */
+    public IOMetricsSnapshot snapshot() {
+        EnumMap<Command, LatencyHistogram> copies = new EnumMap<>(Command.class);
+        for (Map.Entry<Command, LatencyHistogram> entry : latencies.entrySet()) {
+            copies.put(entry.getKey(), entry.getValue().copy());
+        }
+        return new IOMetricsSnapshot(io.getSerialDevice(), io.getIoAddress(), copies, readyPolls.get(),
+                timeouts.get(), driftRetries.get(), parseErrors.get(), bytesSent.get(), bytesReceived.get());
+    }
+
+    /**
+     @param command command type
+     @return live latency histogram of the command type
+     */
+    public LatencyHistogram getLatency(Command command) {
+        return latencies.get(command);
+    }
+
+    @Override
+    public String getSerialDevice() {
+        return io.getSerialDevice();
+    }
+
+    @Override
+    public int getIoAddress() {
+        return io.getIoAddress();
+    }
+
+    @Override
+    public long getCommandCount() {
+        long count = 0;
+        for (LatencyHistogram latency : latencies.values()) {
+            count += latency.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getReadyPolls() {
+        return readyPolls.get();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    @Override
+    public long getDriftRetries() {
+        return driftRetries.get();
+    }
+
+    @Override
+    public long getParseErrors() {
+        return parseErrors.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Map.Entry<Command, LatencyHistogram> entry : latencies.entrySet()) {
+            counts.put(entry.getKey().name(), entry.getValue().getCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMicros() {
+        Map<String, Double> means = new LinkedHashMap<>();
+        for (Map.Entry<Command, LatencyHistogram> entry : latencies.entrySet()) {
+            means.put(entry.getKey().name(), entry.getValue().getMeanNanos() / 1000);
+        }
+        return means;
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyMicros() {
+        Map<String, Long> percentiles = new LinkedHashMap<>();
+        for (Map.Entry<Command, LatencyHistogram> entry : latencies.entrySet()) {
+            percentiles.put(entry.getKey().name(), TimeUnit.NANOSECONDS.toMicros(entry.getValue().getPercentileNanos(99)));
+        }
+        return percentiles;
+    }
+
+    @Override
+    public Map<String, Long> getMaxLatencyMicros() {
+        Map<String, Long> maxima = new LinkedHashMap<>();
+        for (Map.Entry<Command, LatencyHistogram> entry : latencies.entrySet()) {
+            maxima.put(entry.getKey().name(), TimeUnit.NANOSECONDS.toMicros(entry.getValue().getMaxNanos()));
+        }
+        return maxima;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram latency : latencies.values()) {
+            latency.reset();
+        }
+        readyPolls.set(0);
+        timeouts.set(0);
+        driftRetries.set(0);
+        parseErrors.set(0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "IOMetrics{"+
+                "serialDevice='"+io.getSerialDevice()+'\''+
+                ", ioAddress="+io.getIoAddress()+
+                ", commandCount="+getCommandCount()+
+                ", readyPolls="+getReadyPolls()+
+                ", timeouts="+getTimeouts()+
+                ", driftRetries="+getDriftRetries()+
+                ", parseErrors="+getParseErrors()+
+                '}';
+    }
+}
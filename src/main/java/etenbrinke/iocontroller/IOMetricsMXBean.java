@@ -0,0 +1,52 @@
+package etenbrinke.iocontroller;
+
+import java.util.Map;
+
+public interface IOMetricsMXBean {
+
+    String getSerialDevice();
+
+    int getIoAddress();
+
+    long getCommandCount();
+
+    long getReadyPolls();
+
+    /**
+     @return number of reads that got no answer, also not after a retry
+     */
+    long getTimeouts();
+
+    /**
+     @return number of reads that missed the timeout of a calibrated timing profile and were retried with the default timeout
+     */
+    long getDriftRetries();
+
+    long getParseErrors();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    /**
+     @return number of commands per command name
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     @return mean latency in microseconds per command name
+     */
+    Map<String, Double> getMeanLatencyMicros();
+
+    /**
+     @return 99th percentile latency in microseconds per command name
+     */
+    Map<String, Long> getP99LatencyMicros();
+
+    /**
+     @return maximum latency in microseconds per command name
+     */
+    Map<String, Long> getMaxLatencyMicros();
+
+    void reset();
+}
@@ -0,0 +1,104 @@
+package etenbrinke.iocontroller;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+public final class IOMetricsSnapshot {
+
+    private final String serialDevice;
+    private final int ioAddress;
+    private final Map<IOMetrics.Command, LatencyHistogram> latencies;
+    private final long readyPolls;
+    private final long timeouts;
+    private final long driftRetries;
+    private final long parseErrors;
+    private final long bytesSent;
+    private final long bytesReceived;
+
+    IOMetricsSnapshot(String serialDevice, int ioAddress, EnumMap<IOMetrics.Command, LatencyHistogram> latencies,
+                      long readyPolls, long timeouts, long driftRetries, long parseErrors, long bytesSent, long bytesReceived) {
+        this.serialDevice = serialDevice;
+        this.ioAddress = ioAddress;
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.readyPolls = readyPolls;
+        this.timeouts = timeouts;
+        this.driftRetries = driftRetries;
+        this.parseErrors = parseErrors;
+        this.bytesSent = bytesSent;
+        this.bytesReceived = bytesReceived;
+    }
+
+    public String getSerialDevice() {
+        return serialDevice;
+    }
+
+    public int getIoAddress() {
+        return ioAddress;
+    }
+
+    /**
+     @param command command type
+     @return latency histogram of the command type at the time of the snapshot
+     */
+    public LatencyHistogram getLatency(IOMetrics.Command command) {
+        return latencies.get(command);
+    }
+
+    public Map<IOMetrics.Command, LatencyHistogram> getLatencies() {
+        return latencies;
+    }
+
+    public long getCommandCount() {
+        long count = 0;
+        for (LatencyHistogram latency : latencies.values()) {
+            count += latency.getCount();
+        }
+        return count;
+    }
+
+    public long getReadyPolls() {
+        return readyPolls;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getDriftRetries() {
+        return driftRetries;
+    }
+
+    public long getParseErrors() {
+        return parseErrors;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder commands = new StringBuilder();
+        for (Map.Entry<IOMetrics.Command, LatencyHistogram> entry : latencies.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                commands.append(", ").append(entry.getKey()).append('=').append(entry.getValue());
+            }
+        }
+        return "IOMetricsSnapshot{"+
+                "serialDevice='"+serialDevice+'\''+
+                ", ioAddress="+ioAddress+
+                ", readyPolls="+readyPolls+
+                ", timeouts="+timeouts+
+                ", driftRetries="+driftRetries+
+                ", parseErrors="+parseErrors+
+                ", bytesSent="+bytesSent+
+                ", bytesReceived="+bytesReceived+
+                commands+
+                '}';
+    }
+}
@@ -0,0 +1,107 @@
+package etenbrinke.iocontroller;
+
+import java.nio.ByteBuffer;
+
+public final class IORecord {
+
+    /**
+     Kind of event a record holds
+     */
+    public enum Type {
+        COMMAND,
+        DIGITAL_INPUT_EDGE,
+        ANALOG_SAMPLE
+    }
+
+    static final int SIZE = 32;
+    static final int TIMESTAMP = 0;
+    static final int IO_ADDRESS = 8;
+    static final int TYPE = 10;
+    static final int COMMAND = 11;
+    static final int CHANNEL = 12;
+    static final int VALUE = 16;
+    static final int DURATION = 24;
+    private static final Type[] TYPES = Type.values();
+    private static final IOMetrics.Command[] COMMANDS = IOMetrics.Command.values();
+    private long timestampNanos;
+    private int ioAddress;
+    private Type type;
+    private IOMetrics.Command command;
+    private int channel;
+    private double value;
+    private long durationNanos;
+
+    /**
+     Record of the I/O history as read by IORecordReader
+     The reader reuses one instance for every record it passes, copy the fields to keep them
+     */
+    IORecord() {
+    }
+
+    void read(ByteBuffer buffer, int offset) {
+        timestampNanos = buffer.getLong(offset + TIMESTAMP);
+        ioAddress = buffer.getShort(offset + IO_ADDRESS) & 0xFFFF;
+        type = TYPES[buffer.get(offset + TYPE)];
+        int commandOrdinal = buffer.get(offset + COMMAND);
+        command = commandOrdinal < 0 ? null : COMMANDS[commandOrdinal];
+        channel = buffer.getInt(offset + CHANNEL);
+        value = buffer.getDouble(offset + VALUE);
+        durationNanos = buffer.getLong(offset + DURATION);
+    }
+
+    /**
+     @return time of the event in nanoseconds since the epoch
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getIoAddress() {
+        return ioAddress;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     @return command type of a COMMAND record, null for other records
+     */
+    public IOMetrics.Command getCommand() {
+        return command;
+    }
+
+    /**
+     @return number of the output, input, block or analog channel, -1 for commands without one
+     */
+    public int getChannel() {
+        return channel;
+    }
+
+    /**
+     @return logical level, byte value, switch or voltage in V
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     @return duration of a COMMAND record, 0 for other records
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "IORecord{"+
+                "timestampNanos="+timestampNanos+
+                ", ioAddress="+ioAddress+
+                ", type="+type+
+                ", command="+command+
+                ", channel="+channel+
+                ", value="+value+
+                ", durationNanos="+durationNanos+
+                '}';
+    }
+}
@@ -0,0 +1,160 @@
+package etenbrinke.iocontroller;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class IORecordReader {
+
+    private final Path directory;
+
+    /**
+     Reader of the segment files written by IORecorder
+     Segments are memory-mapped read-only and searched by time, only the pages that are visited are loaded
+     The records of a segment that a recorder is still appending to are not ordered for a concurrent reader,
+     only the records written before the last flush() or close() of the recorder are known to be complete.
+     The newest records of a live segment may be incomplete or torn
+     @param directory directory of the segment files
+     */
+    public IORecordReader(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     Pass every record in a time range to the consumer, oldest first
+     The same IORecord instance is passed for every record, copy its fields to keep them
+     @param fromNanos first timestamp in nanoseconds since the epoch, inclusive
+     @param toNanos last timestamp in nanoseconds since the epoch, inclusive
+     @param consumer receives the records
+     @return number of records passed
+     @throws IOException when a segment cannot be read
+     */
+    public long scan(long fromNanos, long toNanos, Consumer<IORecord> consumer) throws IOException {
+        IORecord record = new IORecord();
+        long passed = 0;
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size(); i++) {
+            MappedByteBuffer segment = map(segments.get(i));
+            if (segment == null) {
+                continue;
+            }
+            int count = recordCount(segment);
+            if (count == 0 || timestamp(segment, 0) > toNanos) {
+                continue;
+            }
+            if (timestamp(segment, count - 1) < fromNanos) {
+                continue;
+            }
+            for (int index = firstAtOrAfter(segment, count, fromNanos); index < count; index++) {
+                if (timestamp(segment, index) > toNanos) {
+                    break;
+                }
+                record.read(segment, offset(index));
+                consumer.accept(record);
+                passed++;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     Pass every record to the consumer, oldest first
+     @param consumer receives the records
+     @return number of records passed
+     @throws IOException when a segment cannot be read
+     */
+    public long scan(Consumer<IORecord> consumer) throws IOException {
+        return scan(Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     @return segment files in the order they were written
+     @throws IOException when the directory cannot be listed
+     */
+    public List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                IORecorder.SEGMENT_PREFIX+"*"+IORecorder.SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        // the segment index is zero padded, so the names sort in the order of writing
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     @return segment mapped read-only, null when it is not a segment of this version
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < IORecorder.HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (segment.getInt(0) != IORecorder.MAGIC || segment.getInt(4) != IORecorder.VERSION
+                    || segment.getInt(8) != IORecord.SIZE) {
+                return null;
+            }
+            return segment;
+        }
+    }
+
+    /**
+     Records are written front to back, the first zero timestamp ends them
+     */
+    private static int recordCount(MappedByteBuffer segment) {
+        int low = 0;
+        int high = (segment.capacity() - IORecorder.HEADER_SIZE) / IORecord.SIZE;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamp(segment, middle) != 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int firstAtOrAfter(MappedByteBuffer segment, int count, long fromNanos) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamp(segment, middle) < fromNanos) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long timestamp(MappedByteBuffer segment, int index) {
+        return segment.getLong(offset(index) + IORecord.TIMESTAMP);
+    }
+
+    private static int offset(int index) {
+        return IORecorder.HEADER_SIZE + index * IORecord.SIZE;
+    }
+
+    @Override
+    public String toString() {
+        return "IORecordReader{"+
+                "directory="+directory+
+                '}';
+    }
+}
@@ -0,0 +1,190 @@
+package etenbrinke.iocontroller;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class IORecorder implements AutoCloseable {
+
+    static final int MAGIC = 0x494F5243; // IORC
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = IORecord.SIZE;
+    static final String SEGMENT_PREFIX = "io-";
+    static final String SEGMENT_SUFFIX = ".rec";
+    private static final Logger LOG = Logger.getGlobal();
+    private final Path directory;
+    private final int segmentSize;
+    private final long epochOffsetNanos;
+    private long segmentIndex;
+    private MappedByteBuffer segment;
+    private long lastTimestampNanos;
+    private long recordCount;
+    private long droppedCount;
+    private boolean closed;
+
+    /**
+     Recorder of the I/O history in fixed-size binary records, appended to memory-mapped segment files
+     A segment holds a 32 byte header followed by 32 byte records in time order, a zero timestamp ends the records.
+     A new segment is started when the current one is full and on every start of the recorder
+     @param directory directory of the segment files, created when missing
+     @param segmentSize size of a segment file in bytes, at least two records
+     @throws IOException when the directory or the first segment cannot be created
+     */
+    public IORecorder(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = Math.max(HEADER_SIZE + IORecord.SIZE, segmentSize / IORecord.SIZE * IORecord.SIZE);
+        this.epochOffsetNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()) - System.nanoTime();
+        Files.createDirectories(directory);
+        segmentIndex = lastSegmentIndex(directory) + 1;
+        roll();
+    }
+
+    /**
+     Record a command sent to a controller
+     @param ioAddress device address of the controller
+     @param command command type
+     @param channel number of the output, input, block or analog channel, -1 for commands without one
+     @param value value written or read
+     @param startNanos System.nanoTime() when the command started
+     @param endNanos System.nanoTime() when the command completed
+     */
+    public void recordCommand(int ioAddress, IOMetrics.Command command, int channel, double value, long startNanos, long endNanos) {
+        append(endNanos, ioAddress, IORecord.Type.COMMAND, command.ordinal(), channel, value, endNanos - startNanos);
+    }
+
+    /**
+     Record an edge on a digital input
+     @param ioAddress device address of the controller
+     @param digitalInput number 0-31
+     @param logicalLevel new logical level
+     @param timestampNanos System.nanoTime() when the edge was seen
+     */
+    public void recordDigitalInputEdge(int ioAddress, int digitalInput, int logicalLevel, long timestampNanos) {
+        append(timestampNanos, ioAddress, IORecord.Type.DIGITAL_INPUT_EDGE, -1, digitalInput, logicalLevel, 0);
+    }
+
+    /**
+     Record a sample of an analog input
+     @param ioAddress device address of the controller
+     @param analogInput number 0-7
+     @param voltage voltage in V
+     @param timestampNanos System.nanoTime() when the sample was read
+     */
+    public void recordAnalogSample(int ioAddress, int analogInput, double voltage, long timestampNanos) {
+        append(timestampNanos, ioAddress, IORecord.Type.ANALOG_SAMPLE, -1, analogInput, voltage, 0);
+    }
+
+    private synchronized void append(long nanoTime, int ioAddress, IORecord.Type type, int command, int channel, double value, long durationNanos) {
+        if (closed) {
+            return;
+        }
+        if (!segment.hasRemaining()) {
+            try {
+                roll();
+            } catch (IOException e) {
+                droppedCount++;
+                LOG.info(() -> "Recorder segment could not be created : "+e.getMessage());
+                return;
+            }
+        }
+        // records of one segment stay in time order, also when threads pass their own timestamps
+        long timestamp = Math.max(nanoTime + epochOffsetNanos, lastTimestampNanos);
+        int offset = segment.position();
+        segment.putShort(offset + IORecord.IO_ADDRESS, (short) ioAddress);
+        segment.put(offset + IORecord.TYPE, (byte) type.ordinal());
+        segment.put(offset + IORecord.COMMAND, (byte) command);
+        segment.putInt(offset + IORecord.CHANNEL, channel);
+        segment.putDouble(offset + IORecord.VALUE, value);
+        segment.putLong(offset + IORecord.DURATION, durationNanos);
+        // the timestamp is written last, but without a fence: a reader of a segment that is still being
+        // appended may see the timestamp of a record before its other fields, see IORecordReader
+        segment.putLong(offset + IORecord.TIMESTAMP, timestamp);
+        lastTimestampNanos = timestamp;
+        segment.position(offset + IORecord.SIZE);
+        recordCount++;
+    }
+
+    /**
+     Start the next segment. The full segment is left to the operating system to write, flush() forces it
+     */
+    private void roll() throws IOException {
+        Path file = directory.resolve(segmentName(segmentIndex));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+             FileChannel channel = raf.getChannel()) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.putInt(0, MAGIC);
+        segment.putInt(4, VERSION);
+        segment.putInt(8, IORecord.SIZE);
+        segment.position(HEADER_SIZE);
+        segmentIndex++;
+        LOG.info(() -> "Recording to "+file);
+    }
+
+    /**
+     Write the recorded records to the segment file
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            segment.force();
+        }
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     @return number of records lost because a new segment could not be created
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            segment.force();
+            closed = true;
+            segment = null;
+            LOG.info(() -> "Recorder closed after "+recordCount+" records");
+        }
+    }
+
+    static String segmentName(long index) {
+        return SEGMENT_PREFIX+String.format("%016d", index)+SEGMENT_SUFFIX;
+    }
+
+    private static long lastSegmentIndex(Path directory) throws IOException {
+        long last = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX+"*"+SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    last = Math.max(last, Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    LOG.info(() -> "Skipped "+name);
+                }
+            }
+        }
+        return last;
+    }
+
+    @Override
+    public String toString() {
+        return "IORecorder{"+
+                "directory="+directory+
+                ", segmentSize="+segmentSize+
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+final class IORequest<T> {
+    final IOTask<T> task;
+    final CompletableFuture<T> future = new CompletableFuture<>();
+
+    IORequest(IOTask<T> task) {
+        this.task = task;
+    }
+
+    /**
+     Execute the task and complete the future with its result or exception
+     */
+    void execute(IOCommands commands) {
+        try {
+            future.complete(task.execute(commands));
+        } catch (SerialPortException | SerialPortTimeoutException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     Wait for a queued task and rethrow its exception as thrown by the task
+     @param future future of a queued task
+     @param portName serial port name reported when the wait is interrupted
+     @return result of the task
+     */
+    static <T> T await(CompletableFuture<T> future, String portName) throws SerialPortException, SerialPortTimeoutException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SerialPortException(portName, "await()", SerialPortException.TYPE_LISTENER_THREAD_INTERRUPTED);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SerialPortException) {
+                throw (SerialPortException) cause;
+            }
+            if (cause instanceof SerialPortTimeoutException) {
+                throw (SerialPortTimeoutException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     Wait for a queued task that only writes to the controller
+     */
+    static void awaitWrite(CompletableFuture<?> future, String portName) throws SerialPortException {
+        try {
+            await(future, portName);
+        } catch (SerialPortTimeoutException e) {
+            //writes do not read from the controller
+            throw new IllegalStateException(e);
+        }
+    }
+}
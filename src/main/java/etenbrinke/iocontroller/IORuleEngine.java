@@ -0,0 +1,543 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+public class IORuleEngine {
+
+    private static final int DIGITAL_INPUT = 0;
+    private static final int ANALOG_ABOVE = 1;
+    private static final int ANALOG_BELOW = 2;
+    private static final int RISING_EDGE = 3;
+    private static final int FALLING_EDGE = 4;
+    private static final int ON_DELAY = 5;
+    private static final int OFF_DELAY = 6;
+    private static final int AND = 7;
+    private static final int OR = 8;
+    private static final int NOT = 9;
+    private static final int DIGITAL_OUTPUT = 0;
+    private static final int ANALOG_OUTPUT = 1;
+    private static final int UNKNOWN = -1;
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+    private volatile long scanPeriodNanos;
+    // signal table, one row per signal in evaluation order
+    private int signalCount;
+    private int[] op = new int[16];
+    private int[] arg1 = new int[16];
+    private int[] arg2 = new int[16];
+    private int[] arg3 = new int[16];
+    private long[] delayNanos = new long[16];
+    private boolean[] value = new boolean[16];
+    private boolean[] previous = new boolean[16];
+    private long[] changedNanos = new long[16];
+    // output table, one row per output rule
+    private int outputCount;
+    private int[] outputKind = new int[4];
+    private int[] outputChannel = new int[4];
+    private int[] outputSignal = new int[4];
+    private int[] outputOn = new int[4];
+    private int[] outputOff = new int[4];
+    private int[] outputWritten = new int[4];
+    private LatencyHistogram[] reaction = new LatencyHistogram[4];
+    private int inputBlocks;
+    private int analogInputs;
+    private int ruledDigitalOutputs;
+    private int ruledAnalogOutputs;
+    private final int[] analogCounts = new int[8];
+    private volatile long scanCount;
+    private volatile long overrunCount;
+    private volatile long errorCount;
+    private volatile long commandCount;
+    private volatile boolean running;
+    private boolean first;
+    private Thread thread;
+
+    /**
+     Engine that evaluates rules on the inputs of a controller and drives its outputs, on one polling thread
+     Signals are built from digital inputs, analog thresholds with hysteresis, edges, timers and AND, OR, NOT.
+     Every signal is a row in a flat table that refers only to earlier rows, so a scan evaluates the table
+     in one pass. Every scan reads the input blocks and analog inputs the rules use, evaluates the table and sends
+     the outputs that changed, all in one session. Outputs are written with B when the rules own the whole block,
+     otherwise with A per output, and with U for analog outputs
+     The scans lock the controller, other threads using it concurrently have to synchronize on it as well
+     @param io controller, the serial port must be opened
+     @param scanPeriodMillis time between the start of two scans
+     */
+    public IORuleEngine(IOControllerImpl io, long scanPeriodMillis) {
+        this.io = io;
+        setScanPeriodMillis(scanPeriodMillis);
+    }
+
+    public void setScanPeriodMillis(long scanPeriodMillis) {
+        this.scanPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, scanPeriodMillis));
+    }
+
+    public long getScanPeriodMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(scanPeriodNanos);
+    }
+
+    /**
+     @param digitalInput number 0-31
+     @return signal that is true while the digital input is high, -1 parameter out of range
+     */
+    public synchronized int digitalInput(int digitalInput) {
+        if (digitalInput < 0 || digitalInput > 31) {
+            return outOfRange();
+        }
+        inputBlocks |= 1 << (digitalInput >>> 3);
+        return signal(DIGITAL_INPUT, digitalInput, 0, 0, 0);
+    }
+
+    /**
+     @param analogInput number 0-7
+     @param threshold voltage 0-1023 the input has to rise above to make the signal true
+     @param hysteresis voltage the input has to fall below the threshold to make the signal false again
+     @return signal, -1 parameter out of range
+     */
+    public synchronized int analogAbove(int analogInput, int threshold, int hysteresis) {
+        if (analogInput < 0 || analogInput > 7 || threshold < 0 || threshold > 1023 || hysteresis < 0) {
+            return outOfRange();
+        }
+        analogInputs |= 1 << analogInput;
+        return signal(ANALOG_ABOVE, analogInput, threshold, threshold - hysteresis, 0);
+    }
+
+    /**
+     @param analogInput number 0-7
+     @param threshold voltage 0-1023 the input has to fall below to make the signal true
+     @param hysteresis voltage the input has to rise above the threshold to make the signal false again
+     @return signal, -1 parameter out of range
+     */
+    public synchronized int analogBelow(int analogInput, int threshold, int hysteresis) {
+        if (analogInput < 0 || analogInput > 7 || threshold < 0 || threshold > 1023 || hysteresis < 0) {
+            return outOfRange();
+        }
+        analogInputs |= 1 << analogInput;
+        return signal(ANALOG_BELOW, analogInput, threshold, threshold + hysteresis, 0);
+    }
+
+    /**
+     @param signal earlier signal
+     @return signal that is true for one scan when the signal became true, -1 parameter out of range
+     */
+    public synchronized int risingEdge(int signal) {
+        return valid(signal) ? signal(RISING_EDGE, signal, 0, 0, 0) : outOfRange();
+    }
+
+    /**
+     @param signal earlier signal
+     @return signal that is true for one scan when the signal became false, -1 parameter out of range
+     */
+    public synchronized int fallingEdge(int signal) {
+        return valid(signal) ? signal(FALLING_EDGE, signal, 0, 0, 0) : outOfRange();
+    }
+
+    /**
+     @param signal earlier signal
+     @param delayMillis time the signal has to be true
+     @return signal that becomes true when the signal is true for the delay and false with the signal, -1 parameter out of range
+     */
+    public synchronized int onDelay(int signal, long delayMillis) {
+        return valid(signal) && delayMillis >= 0 ? signal(ON_DELAY, signal, 0, 0, TimeUnit.MILLISECONDS.toNanos(delayMillis)) : outOfRange();
+    }
+
+    /**
+     @param signal earlier signal
+     @param delayMillis time the signal has to be false
+     @return signal that becomes true with the signal and false when the signal is false for the delay, -1 parameter out of range
+     */
+    public synchronized int offDelay(int signal, long delayMillis) {
+        return valid(signal) && delayMillis >= 0 ? signal(OFF_DELAY, signal, 0, 0, TimeUnit.MILLISECONDS.toNanos(delayMillis)) : outOfRange();
+    }
+
+    public synchronized int and(int signal, int otherSignal) {
+        return valid(signal) && valid(otherSignal) ? signal(AND, signal, otherSignal, 0, 0) : outOfRange();
+    }
+
+    public synchronized int or(int signal, int otherSignal) {
+        return valid(signal) && valid(otherSignal) ? signal(OR, signal, otherSignal, 0, 0) : outOfRange();
+    }
+
+    public synchronized int not(int signal) {
+        return valid(signal) ? signal(NOT, signal, 0, 0, 0) : outOfRange();
+    }
+
+    /**
+     Drive a digital output with a signal
+     @param digitalOutput number 0-31, driven by one rule only
+     @param signal signal, the output is high while it is true
+     @return rule number, -1 parameter out of range
+     */
+    public synchronized int digitalOutput(int digitalOutput, int signal) {
+        if (digitalOutput < 0 || digitalOutput > 31 || !valid(signal) || (ruledDigitalOutputs >>> digitalOutput & 1) != 0) {
+            return outOfRange();
+        }
+        int rule = output(DIGITAL_OUTPUT, digitalOutput, signal, 1, 0);
+        if (rule >= 0) {
+            ruledDigitalOutputs |= 1 << digitalOutput;
+        }
+        return rule;
+    }
+
+    /**
+     Drive an analog output with a signal
+     @param analogOutput number 0-3, driven by one rule only
+     @param signal signal
+     @param onVoltage voltage 0-1023 while the signal is true
+     @param offVoltage voltage 0-1023 while the signal is false
+     @return rule number, -1 parameter out of range
+     */
+    public synchronized int analogOutput(int analogOutput, int signal, int onVoltage, int offVoltage) {
+        if (analogOutput < 0 || analogOutput > 3 || !valid(signal) || onVoltage < 0 || onVoltage > 1023 || offVoltage < 0 || offVoltage > 1023
+                || (ruledAnalogOutputs >>> analogOutput & 1) != 0) {
+            return outOfRange();
+        }
+        int rule = output(ANALOG_OUTPUT, analogOutput, signal, onVoltage, offVoltage);
+        if (rule >= 0) {
+            ruledAnalogOutputs |= 1 << analogOutput;
+        }
+        return rule;
+    }
+
+    /**
+     Start scanning. The first scan sets the reference for the edges and writes every output,
+     the edges and timers start over as on the first start
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        Arrays.fill(outputWritten, 0, outputCount, UNKNOWN);
+        Arrays.fill(value, 0, signalCount, false);
+        Arrays.fill(previous, 0, signalCount, false);
+        Arrays.fill(changedNanos, 0, signalCount, 0);
+        first = true;
+        running = true;
+        thread = new Thread(this::run, "IORuleEngine-"+io.getIoAddress());
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info(() -> "Rule engine started with "+signalCount+" signals and "+outputCount+" outputs every "+getScanPeriodMillis()+" ms");
+    }
+
+    /**
+     Stop scanning and wait for the running scan to complete. The outputs keep their last state
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info(() -> "Rule engine stopped after "+scanCount+" scans");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     @param signal signal
+     @return value of the signal in the last scan, false for an unknown signal
+     */
+    public boolean getSignal(int signal) {
+        return valid(signal) && value[signal];
+    }
+
+    /**
+     Time from the start of the scan that read the inputs until the output command of the rule completed,
+     for every change of the output. A change on an input is seen up to one scan period later than it happened
+     @param rule rule number
+     @return histogram of the reaction latency, null parameter out of range
+     */
+    public synchronized LatencyHistogram getReactionLatency(int rule) {
+        if (rule < 0 || rule >= outputCount) {
+            LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+            return null;
+        }
+        return reaction[rule].copy();
+    }
+
+    public long getScanCount() {
+        return scanCount;
+    }
+
+    /**
+     @return number of scans that started late because the previous scan took longer than the scan period
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     @return number of output commands sent
+     */
+    public long getCommandCount() {
+        return commandCount;
+    }
+
+    private int signal(int operation, int a, int b, int c, long delay) {
+        if (running) {
+            LOG.info("Rules not changed while running");
+            return -1;
+        }
+        if (signalCount == op.length) {
+            int capacity = signalCount * 2;
+            op = Arrays.copyOf(op, capacity);
+            arg1 = Arrays.copyOf(arg1, capacity);
+            arg2 = Arrays.copyOf(arg2, capacity);
+            arg3 = Arrays.copyOf(arg3, capacity);
+            delayNanos = Arrays.copyOf(delayNanos, capacity);
+            value = Arrays.copyOf(value, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            changedNanos = Arrays.copyOf(changedNanos, capacity);
+        }
+        op[signalCount] = operation;
+        arg1[signalCount] = a;
+        arg2[signalCount] = b;
+        arg3[signalCount] = c;
+        delayNanos[signalCount] = delay;
+        return signalCount++;
+    }
+
+    private int output(int kind, int channel, int signal, int on, int off) {
+        if (running) {
+            LOG.info("Rules not changed while running");
+            return -1;
+        }
+        if (outputCount == outputKind.length) {
+            int capacity = outputCount * 2;
+            outputKind = Arrays.copyOf(outputKind, capacity);
+            outputChannel = Arrays.copyOf(outputChannel, capacity);
+            outputSignal = Arrays.copyOf(outputSignal, capacity);
+            outputOn = Arrays.copyOf(outputOn, capacity);
+            outputOff = Arrays.copyOf(outputOff, capacity);
+            outputWritten = Arrays.copyOf(outputWritten, capacity);
+            reaction = Arrays.copyOf(reaction, capacity);
+        }
+        outputKind[outputCount] = kind;
+        outputChannel[outputCount] = channel;
+        outputSignal[outputCount] = signal;
+        outputOn[outputCount] = on;
+        outputOff[outputCount] = off;
+        outputWritten[outputCount] = UNKNOWN;
+        reaction[outputCount] = new LatencyHistogram();
+        return outputCount++;
+    }
+
+    private boolean valid(int signal) {
+        return signal >= 0 && signal < signalCount;
+    }
+
+    private static int outOfRange() {
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     Scan loop against absolute deadlines, so the scan rate does not drift with the scan duration
+     The table is not changed while running, so the scans do not lock the engine
+     */
+    private void run() {
+        long deadline = System.nanoTime();
+        while (running) {
+            try {
+                scan();
+                scanCount++;
+            } catch (SerialPortException | SerialPortTimeoutException e) {
+                errorCount++;
+                // the outputs are written again on the next scan
+                Arrays.fill(outputWritten, 0, outputCount, UNKNOWN);
+                LOG.info(() -> "Rule scan failed : "+e.getMessage());
+            }
+            deadline += scanPeriodNanos;
+            long wait = deadline - System.nanoTime();
+            if (wait < 0) {
+                overrunCount++;
+                deadline = System.nanoTime();
+            }
+            while (running && (wait = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    /**
+     Read the inputs, evaluate the table and write the changed outputs in one session
+     */
+    private void scan() throws SerialPortException, SerialPortTimeoutException {
+        synchronized (io) {
+            try (IOSession session = io.openSession()) {
+                long start = System.nanoTime();
+                int inputs = 0;
+                for (int block = 0; block < 4; block++) {
+                    if ((inputBlocks >>> block & 1) != 0) {
+                        inputs |= (session.getByteDigitalInputBlock(block) & 0xFF) << (block * 8);
+                    }
+                }
+                for (int analogInput = 0; analogInput < analogCounts.length; analogInput++) {
+                    if ((analogInputs >>> analogInput & 1) != 0) {
+                        analogCounts[analogInput] = (int) Math.round(session.getVoltageAnalogInput(analogInput) * 100);
+                    }
+                }
+                evaluate(inputs, System.nanoTime());
+                first = false;
+                write(session, start);
+            }
+        }
+    }
+
+    private void evaluate(int inputs, long now) {
+        for (int i = 0; i < signalCount; i++) {
+            boolean was = value[i];
+            boolean result;
+            switch (op[i]) {
+                case DIGITAL_INPUT:
+                    result = (inputs >>> arg1[i] & 1) != 0;
+                    break;
+                case ANALOG_ABOVE:
+                    result = was ? analogCounts[arg1[i]] > arg3[i] : analogCounts[arg1[i]] > arg2[i];
+                    break;
+                case ANALOG_BELOW:
+                    result = was ? analogCounts[arg1[i]] < arg3[i] : analogCounts[arg1[i]] < arg2[i];
+                    break;
+                case RISING_EDGE:
+                    result = !first && value[arg1[i]] && !previous[i];
+                    previous[i] = value[arg1[i]];
+                    break;
+                case FALLING_EDGE:
+                    result = !first && !value[arg1[i]] && previous[i];
+                    previous[i] = value[arg1[i]];
+                    break;
+                case ON_DELAY:
+                    result = timer(i, value[arg1[i]], now);
+                    break;
+                case OFF_DELAY:
+                    result = !timer(i, !value[arg1[i]], now);
+                    break;
+                case AND:
+                    result = value[arg1[i]] && value[arg2[i]];
+                    break;
+                case OR:
+                    result = value[arg1[i]] || value[arg2[i]];
+                    break;
+                default:
+                    result = !value[arg1[i]];
+            }
+            value[i] = result;
+        }
+    }
+
+    /**
+     @return true when the condition holds for the delay of the signal
+     */
+    private boolean timer(int i, boolean condition, long now) {
+        if (!condition) {
+            previous[i] = false;
+            return false;
+        }
+        if (!previous[i]) {
+            previous[i] = true;
+            changedNanos[i] = now;
+        }
+        return now - changedNanos[i] >= delayNanos[i];
+    }
+
+    private void write(IOSession session, long start) throws SerialPortException {
+        int changedBlocks = 0;
+        int desired = 0;
+        for (int rule = 0; rule < outputCount; rule++) {
+            int state = value[outputSignal[rule]] ? outputOn[rule] : outputOff[rule];
+            if (state == outputWritten[rule]) {
+                continue;
+            }
+            if (outputKind[rule] == ANALOG_OUTPUT) {
+                session.setVoltageAnalogOutput(outputChannel[rule], state);
+                commandCount++;
+                completed(rule, state, System.nanoTime() - start);
+            } else {
+                changedBlocks |= 1 << (outputChannel[rule] >>> 3);
+            }
+        }
+        if (changedBlocks == 0) {
+            return;
+        }
+        for (int rule = 0; rule < outputCount; rule++) {
+            if (outputKind[rule] == DIGITAL_OUTPUT && value[outputSignal[rule]]) {
+                desired |= 1 << outputChannel[rule];
+            }
+        }
+        for (int block = 0; block < 4; block++) {
+            if ((changedBlocks >>> block & 1) == 0) {
+                continue;
+            }
+            int shift = block * 8;
+            if ((ruledDigitalOutputs >>> shift & 0xFF) == 0xFF) {
+                session.setByteDigitalOutputBlock(block, desired >>> shift & 0xFF);
+                commandCount++;
+                completedBlock(block, desired, start);
+                continue;
+            }
+            for (int rule = 0; rule < outputCount; rule++) {
+                int digitalOutput = outputChannel[rule];
+                if (outputKind[rule] == DIGITAL_OUTPUT && digitalOutput >>> 3 == block) {
+                    int state = desired >>> digitalOutput & 1;
+                    if (state != outputWritten[rule]) {
+                        session.setLogicalLevelDigitalOutput(digitalOutput, state);
+                        commandCount++;
+                        completed(rule, state, System.nanoTime() - start);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     Mark the rules of a block written with one B command
+     */
+    private void completedBlock(int block, int desired, long start) {
+        long latency = System.nanoTime() - start;
+        for (int rule = 0; rule < outputCount; rule++) {
+            int digitalOutput = outputChannel[rule];
+            if (outputKind[rule] == DIGITAL_OUTPUT && digitalOutput >>> 3 == block) {
+                int state = desired >>> digitalOutput & 1;
+                if (state != outputWritten[rule]) {
+                    completed(rule, state, latency);
+                }
+            }
+        }
+    }
+
+    /**
+     Writes of an unknown output, on the first scan and after an error, are no reaction and not recorded
+     */
+    private void completed(int rule, int state, long latency) {
+        if (outputWritten[rule] != UNKNOWN) {
+            reaction[rule].record(latency);
+        }
+        outputWritten[rule] = state;
+    }
+
+    @Override
+    public String toString() {
+        return "IORuleEngine{"+
+                "ioAddress="+io.getIoAddress()+
+                ", signals="+signalCount+
+                ", outputs="+outputCount+
+                '}';
+    }
+}
@@ -0,0 +1,8 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+
+public interface IOSession extends IOCommands, AutoCloseable {
+    @Override
+    void close() throws SerialPortException;
+}
@@ -0,0 +1,152 @@
+package etenbrinke.iocontroller;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+public final class IOSnapshot {
+
+    private static final Logger LOG = Logger.getGlobal();
+    private int digitalInputs;
+    private int digitalOutputs;
+    private final short[] analogInputs = new short[8];
+    private final short[] analogOutputs = new short[4];
+    private long timestampNanos;
+    private long durationNanos;
+
+    /**
+     Empty snapshot, to be filled by IOControllerImpl.getSnapshot(snapshot) every cycle without allocation
+     A snapshot only changes when it is passed to getSnapshot(snapshot) again
+     */
+    public IOSnapshot() {
+    }
+
+    /**
+     Store the state read by the controller
+     */
+    void fill(int digitalInputs, int digitalOutputs, long timestampNanos, long durationNanos) {
+        this.digitalInputs = digitalInputs;
+        this.digitalOutputs = digitalOutputs;
+        this.timestampNanos = timestampNanos;
+        this.durationNanos = durationNanos;
+    }
+
+    void setAnalogInput(int analogInput, int counts) {
+        analogInputs[analogInput] = (short) counts;
+    }
+
+    void setAnalogOutput(int analogOutput, int counts) {
+        analogOutputs[analogOutput] = (short) counts;
+    }
+
+    /**
+     @return digital input 0 in bit 0 up to digital input 31 in bit 31
+     */
+    public int getDigitalInputs() {
+        return digitalInputs;
+    }
+
+    /**
+     @return digital output 0 in bit 0 up to digital output 31 in bit 31
+     */
+    public int getDigitalOutputs() {
+        return digitalOutputs;
+    }
+
+    /**
+     @param digitalInput number 0-31
+     @return logical level 0 or 1, -1 parameter out of range
+     */
+    public int getLogicalLevelDigitalInput(int digitalInput) {
+        if (digitalInput >= 0 && digitalInput <= 31) {
+            return (digitalInputs >>> digitalInput) & 1;
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     @param digitalOutput number 0-31
+     @return logical level 0 or 1, -1 parameter out of range
+     */
+    public int getLogicalLevelDigitalOutput(int digitalOutput) {
+        if (digitalOutput >= 0 && digitalOutput <= 31) {
+            return (digitalOutputs >>> digitalOutput) & 1;
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     @param analogInput number 0-7
+     @return voltage in counts 0-1023, 1023 equals 10.23 V, -1 parameter out of range
+     */
+    public int getAnalogInput(int analogInput) {
+        if (analogInput >= 0 && analogInput <= 7) {
+            return analogInputs[analogInput];
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     @param analogOutput number 0-3
+     @return voltage in counts 0-1023, 1023 equals 10.23 V, -1 parameter out of range
+     */
+    public int getAnalogOutput(int analogOutput) {
+        if (analogOutput >= 0 && analogOutput <= 3) {
+            return analogOutputs[analogOutput];
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     @return voltages in counts of analog input 0-7
+     */
+    public short[] getAnalogInputs() {
+        return analogInputs.clone();
+    }
+
+    /**
+     @return voltages in counts of analog output 0-3
+     */
+    public short[] getAnalogOutputs() {
+        return analogOutputs.clone();
+    }
+
+    /**
+     @return System.nanoTime() when the capture started
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     @return nanoseconds the capture took, 0 for a snapshot that was never filled
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     @return copy that is not changed by a later getSnapshot(snapshot) on this snapshot
+     */
+    public IOSnapshot copy() {
+        IOSnapshot copy = new IOSnapshot();
+        copy.fill(digitalInputs, digitalOutputs, timestampNanos, durationNanos);
+        System.arraycopy(analogInputs, 0, copy.analogInputs, 0, analogInputs.length);
+        System.arraycopy(analogOutputs, 0, copy.analogOutputs, 0, analogOutputs.length);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "IOSnapshot{"+
+                "digitalInputs="+Integer.toHexString(digitalInputs)+"H"+
+                ", digitalOutputs="+Integer.toHexString(digitalOutputs)+"H"+
+                ", analogInputs="+Arrays.toString(analogInputs)+
+                ", analogOutputs="+Arrays.toString(analogOutputs)+
+                ", durationNanos="+durationNanos+
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+@FunctionalInterface
+public interface IOTask<T> {
+    /**
+     Run commands on the controller
+     @param commands commands of the controller, the controller is addressed for the duration of the task
+     @return result of the task
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading from the controller
+     */
+    T execute(IOCommands commands) throws SerialPortException, SerialPortTimeoutException;
+}
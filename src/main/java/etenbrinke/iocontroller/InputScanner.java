@@ -0,0 +1,215 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+public class InputScanner {
+
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+    private final List<DigitalInputListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile long scanPeriodNanos;
+    private volatile int inputs;
+    private volatile long lastScanNanos;
+    private volatile long scanCount;
+    private volatile long overrunCount;
+    private volatile long errorCount;
+    private volatile boolean running;
+    private volatile IORecorder recorder;
+    private Thread thread;
+
+    /**
+     Scanner that reads the 32 digital inputs of a controller with the 4 block commands f0..f3
+     on a background thread and reports rising and falling edges to the listeners
+     The scans lock the controller, other threads using it concurrently have to synchronize on it as well
+     @param io controller, the serial port must be opened
+     @param scanPeriodMillis time between the start of two scans
+     */
+    public InputScanner(IOControllerImpl io, long scanPeriodMillis) {
+        this.io = io;
+        setScanPeriodMillis(scanPeriodMillis);
+    }
+
+    public void setScanPeriodMillis(long scanPeriodMillis) {
+        this.scanPeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, scanPeriodMillis));
+    }
+
+    public long getScanPeriodMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(scanPeriodNanos);
+    }
+
+    /**
+     Record every edge seen by the scanner
+     @param recorder recorder to append the edges to, null to stop recording
+     */
+    public void setRecorder(IORecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public void addListener(DigitalInputListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DigitalInputListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     Start scanning. The first scan sets the reference levels and reports no edges
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "InputScanner-"+io.getIoAddress());
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info(() -> "Input scanner started every "+getScanPeriodMillis()+" ms");
+    }
+
+    /**
+     Stop scanning and wait for the running scan to complete
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info(() -> "Input scanner stopped after "+scanCount+" scans");
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     Digital inputs of the last scan
+     @return digital input 0 in bit 0 up to digital input 31 in bit 31
+     */
+    public int getInputs() {
+        return inputs;
+    }
+
+    /**
+     Logical level of a digital input in the last scan, without a round trip to the controller
+     @param digitalInput number 0-31
+     @return logical level 0 or 1, -1 parameter out of range
+     */
+    public int getLogicalLevelDigitalInput(int digitalInput) {
+        if (digitalInput >= 0 && digitalInput <= 31) {
+            return (inputs >>> digitalInput) & 1;
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return -1;
+    }
+
+    /**
+     @return System.nanoTime() of the completion of the last scan
+     */
+    public long getLastScanNanos() {
+        return lastScanNanos;
+    }
+
+    public long getScanCount() {
+        return scanCount;
+    }
+
+    /**
+     @return number of scans that started late because the previous scan took longer than the scan period
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     Scan loop against absolute deadlines, so the scan rate does not drift with the scan duration
+     */
+    private void run() {
+        long deadline = System.nanoTime();
+        boolean first = true;
+        while (running) {
+            try {
+                int scanned = scan();
+                long now = System.nanoTime();
+                int previous = inputs;
+                inputs = scanned;
+                lastScanNanos = now;
+                scanCount++;
+                if (!first) {
+                    fireEdges(previous, scanned, now);
+                }
+                first = false;
+            } catch (SerialPortException | SerialPortTimeoutException e) {
+                errorCount++;
+                LOG.info(() -> "Input scan failed : "+e.getMessage());
+            }
+            deadline += scanPeriodNanos;
+            long wait = deadline - System.nanoTime();
+            if (wait < 0) {
+                overrunCount++;
+                deadline = System.nanoTime();
+            }
+            while (running && (wait = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+
+    private int scan() throws SerialPortException, SerialPortTimeoutException {
+        int scanned = 0;
+        synchronized (io) {
+            try (IOSession session = io.openSession()) {
+                for (int block = 0; block < 4; block++) {
+                    scanned |= (session.getByteDigitalInputBlock(block) & 0xFF) << (block * 8);
+                }
+            }
+        }
+        return scanned;
+    }
+
+    private void fireEdges(int previous, int scanned, long timestampNanos) {
+        int changed = previous ^ scanned;
+        IORecorder edgeRecorder = recorder;
+        while (changed != 0) {
+            int digitalInput = Integer.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            int logicalLevel = (scanned >>> digitalInput) & 1;
+            if (edgeRecorder != null) {
+                edgeRecorder.recordDigitalInputEdge(io.getIoAddress(), digitalInput, logicalLevel, timestampNanos);
+            }
+            for (DigitalInputListener listener : listeners) {
+                try {
+                    listener.digitalInputChanged(digitalInput, logicalLevel, timestampNanos);
+                } catch (RuntimeException e) {
+                    LOG.info(() -> "Digital input listener failed : "+e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InputScanner{"+
+                "ioAddress="+io.getIoAddress()+
+                ", scanPeriodMillis="+getScanPeriodMillis()+
+                ", running="+running+
+                '}';
+    }
+}
@@ -0,0 +1,218 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+public class JsscSerialTransport implements SerialTransport, SerialPortEventListener {
+
+    private final SerialPort serialPort;
+    private final Object rxLock = new Object();
+    private byte[] rxBuffer = new byte[256];
+    private int rxHead;
+    private int rxCount;
+    private SerialPortException readerException;
+
+    /**
+     Serial transport on a physical serial device using jSSC
+     Received bytes are collected by the jSSC event thread, so reads return as soon as the bytes arrived
+     @param serialDevice serial device name, e.g. /dev/cu.usbserial-FTA (Unix) or COM1 (Windows)
+     */
+    public JsscSerialTransport(String serialDevice) {
+        serialPort = new SerialPort(serialDevice);
+    }
+
+    @Override
+    public String getPortName() {
+        return serialPort.getPortName();
+    }
+
+    @Override
+    public boolean isOpened() {
+        return serialPort.isOpened();
+    }
+
+    @Override
+    public void openPort() throws SerialPortException {
+        synchronized (rxLock) {
+            rxCount = 0;
+            readerException = null;
+        }
+        serialPort.openPort();
+        serialPort.addEventListener(this, SerialPort.MASK_RXCHAR);
+    }
+
+    @Override
+    public void setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException {
+        serialPort.setParams(baudRate, dataBits, stopBits, parity);
+    }
+
+    @Override
+    public void closePort() throws SerialPortException {
+        try {
+            serialPort.removeEventListener();
+        } finally {
+            serialPort.closePort();
+            synchronized (rxLock) {
+                rxLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void writeBytes(byte[] buffer) throws SerialPortException {
+        serialPort.writeBytes(buffer);
+    }
+
+    @Override
+    public void writeByte(byte singleByte) throws SerialPortException {
+        serialPort.writeByte(singleByte);
+    }
+
+    @Override
+    public void writeInt(int singleInt) throws SerialPortException {
+        serialPort.writeInt(singleInt);
+    }
+
+    @Override
+    public void writeString(String string) throws SerialPortException {
+        serialPort.writeString(string);
+    }
+
+    @Override
+    public byte[] readBytes(int byteCount) throws SerialPortException {
+        try {
+            return take(byteCount, 0, 0, "readBytes()");
+        } catch (SerialPortTimeoutException e) {
+            //no deadline without timeout
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] readBytes(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        return take(byteCount, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout), timeout, "readBytes()");
+    }
+
+    @Override
+    public String readString(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        byte[] buffer = take(byteCount, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout), timeout, "readString()");
+        return new String(buffer, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        synchronized (rxLock) {
+            awaitBytes(1, deadline, timeout, "read()");
+            int count = Math.min(length, rxCount);
+            copy(buffer, offset, count);
+            return count;
+        }
+    }
+
+    @Override
+    public int getInputBufferBytesCount() throws SerialPortException {
+        synchronized (rxLock) {
+            return rxCount;
+        }
+    }
+
+    /**
+     Collect received bytes on the jSSC event thread
+     @param event serial port event, only RXCHAR is registered
+     */
+    @Override
+    public void serialEvent(SerialPortEvent event) {
+        if (!event.isRXCHAR() || event.getEventValue() <= 0) {
+            return;
+        }
+        try {
+            byte[] data = serialPort.readBytes(event.getEventValue());
+            if (data != null) {
+                synchronized (rxLock) {
+                    append(data);
+                    rxLock.notifyAll();
+                }
+            }
+        } catch (SerialPortException e) {
+            synchronized (rxLock) {
+                readerException = e;
+                rxLock.notifyAll();
+            }
+        }
+    }
+
+    private void append(byte[] data) {
+        if (rxCount + data.length > rxBuffer.length) {
+            byte[] buffer = new byte[Math.max(rxBuffer.length * 2, rxCount + data.length)];
+            for (int i = 0; i < rxCount; i++) {
+                buffer[i] = rxBuffer[(rxHead + i) % rxBuffer.length];
+            }
+            rxBuffer = buffer;
+            rxHead = 0;
+        }
+        for (byte b : data) {
+            rxBuffer[(rxHead + rxCount) % rxBuffer.length] = b;
+            rxCount++;
+        }
+    }
+
+    /**
+     Wait until byteCount bytes are received or the deadline passed
+     A timeout of 0 waits without deadline
+     */
+    private byte[] take(int byteCount, long deadline, int timeout, String methodName) throws SerialPortException, SerialPortTimeoutException {
+        byte[] buffer = new byte[byteCount];
+        synchronized (rxLock) {
+            awaitBytes(byteCount, deadline, timeout, methodName);
+            copy(buffer, 0, byteCount);
+        }
+        return buffer;
+    }
+
+    private void awaitBytes(int byteCount, long deadline, int timeout, String methodName) throws SerialPortException, SerialPortTimeoutException {
+        while (rxCount < byteCount) {
+            if (readerException != null) {
+                throw readerException;
+            }
+            if (!serialPort.isOpened()) {
+                throw new SerialPortException(serialPort.getPortName(), methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+            }
+            long remaining = deadline - System.nanoTime();
+            if (timeout > 0 && remaining <= 0) {
+                throw new SerialPortTimeoutException(serialPort.getPortName(), methodName, timeout);
+            }
+            try {
+                if (timeout > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(rxLock, remaining);
+                } else {
+                    rxLock.wait();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new SerialPortException(serialPort.getPortName(), methodName, SerialPortException.TYPE_LISTENER_THREAD_INTERRUPTED);
+            }
+        }
+    }
+
+    private void copy(byte[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            buffer[offset + i] = rxBuffer[rxHead];
+            rxHead = (rxHead + 1) % rxBuffer.length;
+        }
+        rxCount -= length;
+    }
+
+    @Override
+    public String toString() {
+        return "JsscSerialTransport{"+
+                "portName='"+serialPort.getPortName()+'\''+
+                '}';
+    }
+}
@@ -0,0 +1,145 @@
+package etenbrinke.iocontroller;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 256;
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong totalNanos;
+    private final AtomicLong maxNanos;
+
+    /**
+     Histogram of latencies in nanoseconds with four buckets per power of two,
+     so percentiles are accurate within 25%. Recording does not allocate or lock
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new AtomicLong();
+        totalNanos = new AtomicLong();
+        maxNanos = new AtomicLong();
+    }
+
+    private LatencyHistogram(LatencyHistogram source) {
+        this();
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, source.counts.get(i));
+        }
+        count.set(source.count.get());
+        totalNanos.set(source.totalNanos.get());
+        maxNanos.set(source.maxNanos.get());
+    }
+
+    /**
+     Record one latency
+     @param nanos latency in nanoseconds, negative values count as 0
+     */
+    public void record(long nanos) {
+        long latency = Math.max(nanos, 0);
+        counts.incrementAndGet(bucket(latency));
+        count.incrementAndGet();
+        totalNanos.addAndGet(latency);
+        maxNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     @return mean latency in nanoseconds, 0 without records
+     */
+    public double getMeanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) totalNanos.get() / n;
+    }
+
+    /**
+     Latency below which the given part of the records fall
+     @param percentile percentile 0-100, e.g. 99
+     @return upper bound of the bucket in nanoseconds, 0 without records
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     @return copy of the current counts that is not changed by later records
+     */
+    public LatencyHistogram copy() {
+        return new LatencyHistogram(this);
+    }
+
+    /**
+     Add the records of another histogram
+     @param other histogram, not changed
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.addAndGet(i, other.counts.get(i));
+        }
+        count.addAndGet(other.count.get());
+        totalNanos.addAndGet(other.totalNanos.get());
+        maxNanos.accumulateAndGet(other.maxNanos.get(), Math::max);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+        return lower + (1L << (exponent - 2)) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{"+
+                "count="+getCount()+
+                ", meanNanos="+Math.round(getMeanNanos())+
+                ", p99Nanos="+getPercentileNanos(99)+
+                ", maxNanos="+getMaxNanos()+
+                '}';
+    }
+}
@@ -0,0 +1,199 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.logging.Logger;
+
+public class OutputStateWriter {
+
+    private static final int ROUND_TRIP_BYTES = 4; // status request, status byte and controller turnaround in byte times
+    private static final int ALL_OUTPUTS_BYTES = 2; // C or D and CR
+    private static final int BASE_CURRENT = 0;
+    private static final int BASE_ALL_LOW = 1;
+    private static final int BASE_ALL_HIGH = 2;
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+    private final int[] analogOutputs = new int[4];
+    private int digitalOutputs;
+    private boolean known;
+
+    /**
+     Writer that brings the outputs of a controller to a desired state with the least commands
+     The state of the outputs is read from the controller on first use and kept afterwards,
+     call invalidate() when outputs are changed without this writer. With the output mirror
+     of the controller enabled the state is taken from the mirror on every apply
+     The writer locks the controller, other threads using it concurrently have to synchronize on it as well
+     @param io controller, the serial port must be opened
+     */
+    public OutputStateWriter(IOControllerImpl io) {
+        this.io = io;
+    }
+
+    /**
+     Forget the known output state, it is read from the controller on next apply
+     */
+    public void invalidate() {
+        synchronized (io) {
+            known = false;
+        }
+    }
+
+    /**
+     Set all 32 digital outputs
+     @param desiredDigitalOutputs digital output 0 in bit 0 up to digital output 31 in bit 31
+     @return number of commands sent
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading the current state
+     */
+    public int apply(int desiredDigitalOutputs) throws SerialPortException, SerialPortTimeoutException {
+        return apply(desiredDigitalOutputs, null);
+    }
+
+    /**
+     Set all 32 digital outputs and the 4 analog outputs
+     The outputs are changed with a C or D command followed by B or A commands per block,
+     whichever costs the least bytes and round trips, and a U command per changed analog output
+     @param desiredDigitalOutputs digital output 0 in bit 0 up to digital output 31 in bit 31
+     @param desiredAnalogOutputs voltages 0-1023 of analog output 0-3, null to leave the analog outputs untouched
+     @return number of commands sent, -1 parameter out of range
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading the current state
+     */
+    public int apply(int desiredDigitalOutputs, int[] desiredAnalogOutputs) throws SerialPortException, SerialPortTimeoutException {
+        if (desiredAnalogOutputs != null && !validAnalogOutputs(desiredAnalogOutputs)) {
+            LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+            return -1;
+        }
+        int commands = 0;
+        synchronized (io) {
+            try (IOSession session = io.openSession()) {
+                if (!known || io.isOutputMirror()) {
+                    readState(session);
+                }
+                // the known state is only trusted again when all commands went out
+                known = false;
+                int base = chooseBase(digitalOutputs, desiredDigitalOutputs);
+                int current = digitalOutputs;
+                if (base != BASE_CURRENT) {
+                    session.setAllDigitalOutputs(base == BASE_ALL_HIGH ? 1 : 0);
+                    current = base == BASE_ALL_HIGH ? 0xFFFFFFFF : 0;
+                    commands++;
+                }
+                for (int block = 0; block < 4; block++) {
+                    int currentByte = (current >>> (block * 8)) & 0xFF;
+                    int desiredByte = (desiredDigitalOutputs >>> (block * 8)) & 0xFF;
+                    if (currentByte == desiredByte) {
+                        continue;
+                    }
+                    if (byteCost(desiredByte) <= bitsCost(block, currentByte ^ desiredByte)) {
+                        session.setByteDigitalOutputBlock(block, desiredByte);
+                        commands++;
+                    } else {
+                        int changed = currentByte ^ desiredByte;
+                        for (int bit = 0; bit < 8; bit++) {
+                            if ((changed & (1 << bit)) != 0) {
+                                session.setLogicalLevelDigitalOutput(block * 8 + bit, (desiredByte >>> bit) & 1);
+                                commands++;
+                            }
+                        }
+                    }
+                }
+                digitalOutputs = desiredDigitalOutputs;
+                if (desiredAnalogOutputs != null) {
+                    for (int analogOutput = 0; analogOutput < 4; analogOutput++) {
+                        if (analogOutputs[analogOutput] != desiredAnalogOutputs[analogOutput]) {
+                            session.setVoltageAnalogOutput(analogOutput, desiredAnalogOutputs[analogOutput]);
+                            analogOutputs[analogOutput] = desiredAnalogOutputs[analogOutput];
+                            commands++;
+                        }
+                    }
+                }
+                known = true;
+            }
+        }
+        int sent = commands;
+        LOG.info(() -> "Output state applied with "+sent+" commands");
+        return commands;
+    }
+
+    private static boolean validAnalogOutputs(int[] voltages) {
+        if (voltages.length != 4) {
+            return false;
+        }
+        for (int voltage : voltages) {
+            if (voltage < 0 || voltage > 1023) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void readState(IOSession session) throws SerialPortException, SerialPortTimeoutException {
+        int state = 0;
+        for (int block = 0; block < 4; block++) {
+            state |= (session.getByteDigitalOutputBlock(block) & 0xFF) << (block * 8);
+        }
+        digitalOutputs = state;
+        for (int analogOutput = 0; analogOutput < 4; analogOutput++) {
+            analogOutputs[analogOutput] = (int) Math.round(session.getVoltageAnalogOutput(analogOutput) * 100);
+        }
+    }
+
+    /**
+     Choose to start from the current outputs, or from all outputs low (C) or high (D)
+     */
+    static int chooseBase(int current, int desired) {
+        int best = BASE_CURRENT;
+        int bestCost = digitalCost(current, desired);
+        int lowCost = ALL_OUTPUTS_BYTES + ROUND_TRIP_BYTES + digitalCost(0, desired);
+        if (lowCost < bestCost) {
+            best = BASE_ALL_LOW;
+            bestCost = lowCost;
+        }
+        int highCost = ALL_OUTPUTS_BYTES + ROUND_TRIP_BYTES + digitalCost(0xFFFFFFFF, desired);
+        if (highCost < bestCost) {
+            best = BASE_ALL_HIGH;
+        }
+        return best;
+    }
+
+    /**
+     Cost in byte times to change the digital outputs from current to desired with B and A commands
+     */
+    static int digitalCost(int current, int desired) {
+        int cost = 0;
+        for (int block = 0; block < 4; block++) {
+            int desiredByte = (desired >>> (block * 8)) & 0xFF;
+            int changed = ((current ^ desired) >>> (block * 8)) & 0xFF;
+            if (changed != 0) {
+                cost += Math.min(byteCost(desiredByte), bitsCost(block, changed));
+            }
+        }
+        return cost;
+    }
+
+    /**
+     Cost of B block,byte CR
+     */
+    private static int byteCost(int byteValue) {
+        return 4 + digits(byteValue) + ROUND_TRIP_BYTES;
+    }
+
+    /**
+     Cost of A output,level CR for every changed bit in a block
+     */
+    private static int bitsCost(int block, int changed) {
+        int cost = 0;
+        for (int bit = 0; bit < 8; bit++) {
+            if ((changed & (1 << bit)) != 0) {
+                cost += 4 + digits(block * 8 + bit) + ROUND_TRIP_BYTES;
+            }
+        }
+        return cost;
+    }
+
+    private static int digits(int value) {
+        return value >= 100 ? 3 : value >= 10 ? 2 : 1;
+    }
+}
@@ -0,0 +1,362 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+public class PriorityIOController implements IOExecutor, AutoCloseable {
+
+    /**
+     Priority classes, executed strictly in this order
+     */
+    public enum Priority {
+        /** safety commands, never rejected, dropped or merged */
+        EMERGENCY,
+        /** writes that control the process */
+        CONTROL,
+        /** reads somebody waits for */
+        READ,
+        /** polling that may lag behind */
+        BACKGROUND
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    private static final int MAX_BATCH = 64;
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+    private final int queueCapacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final EnumMap<Priority, ArrayDeque<Entry<?>>> queues = new EnumMap<>(Priority.class);
+    private final Map<Object, Entry<?>> merged = new HashMap<>();
+    private final EnumMap<Priority, LatencyHistogram> queueWait = new EnumMap<>(Priority.class);
+    private final Thread thread;
+    private long expiredCount;
+    private long mergedCount;
+    private boolean running = true;
+
+    public PriorityIOController(IOControllerImpl io) {
+        this(io, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     Front end of a controller that executes commands by priority on one I/O thread
+     Before every task the highest priority task that is queued is taken, tasks are not preempted. An emergency
+     task waits for the task that is executing, which may send many commands, and for the other users of the
+     controller lock such as an InputScanner or AnalogSampler, the lock of the controller is not fair.
+     Tasks that are queued back to back are executed in one session. A task that was not started before its
+     deadline is dropped, except emergency tasks
+     @param io controller, the serial port must be opened
+     @param queueCapacity maximum number of queued commands per priority, emergency commands are not limited
+     */
+    public PriorityIOController(IOControllerImpl io, int queueCapacity) {
+        this.io = io;
+        this.queueCapacity = queueCapacity;
+        for (Priority priority : PRIORITIES) {
+            queues.put(priority, new ArrayDeque<>());
+            queueWait.put(priority, new LatencyHistogram());
+        }
+        thread = new Thread(this::run, "PriorityIOController-"+io.getIoAddress());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     Queue a task with CONTROL priority and no deadline
+     @param task commands to run on the controller
+     @return future completed with the result of the task or the exception it threw
+     */
+    @Override
+    public <T> CompletableFuture<T> submit(IOTask<T> task) {
+        return submit(Priority.CONTROL, 0, task);
+    }
+
+    /**
+     Queue a task without deadline
+     @param priority priority class
+     @param task commands to run on the controller
+     @return future completed with the result of the task or the exception it threw
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, IOTask<T> task) {
+        return submit(priority, 0, task);
+    }
+
+    /**
+     Queue a task
+     @param priority priority class
+     @param deadlineMillis time in ms the task has to start within, 0 without deadline
+     @param task commands to run on the controller
+     @return future completed with the result of the task, the exception it threw or
+     a SerialPortTimeoutException when it was dropped at its deadline
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, long deadlineMillis, IOTask<T> task) {
+        return enqueue(priority, deadlineMillis, null, task);
+    }
+
+    /**
+     Queue a read that is merged with an equal read that is still queued, both get the result of one execution
+     A queued read of a lower priority class is moved up to the priority of the read merged into it
+     @param priority priority class, EMERGENCY reads are not merged
+     @param deadlineMillis time in ms the read has to start within, 0 without deadline
+     @param key identifies equal reads, e.g. "f0". Reads with equal keys have to return the same result type,
+     otherwise the caller of the merged read gets a ClassCastException
+     @param task read to run on the controller
+     @return future completed with the result of the read
+     */
+    public <T> CompletableFuture<T> submitRead(Priority priority, long deadlineMillis, Object key, IOTask<T> task) {
+        return enqueue(priority, deadlineMillis, priority == Priority.EMERGENCY ? null : key, task);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> enqueue(Priority priority, long deadlineMillis, Object key, IOTask<T> task) {
+        long now = System.nanoTime();
+        Entry<T> entry = new Entry<>(task, priority, now, deadlineMillis > 0 ? now + TimeUnit.MILLISECONDS.toNanos(deadlineMillis) : 0, key);
+        lock.lock();
+        try {
+            if (!running) {
+                entry.request.future.completeExceptionally(new RejectedExecutionException("PriorityIOController closed"));
+                return entry.request.future;
+            }
+            ArrayDeque<Entry<?>> queue = queues.get(priority);
+            if (key != null) {
+                Entry<?> queued = merged.get(key);
+                if (queued != null && (queued.priority.compareTo(priority) <= 0 || queue.size() < queueCapacity)) {
+                    mergedCount++;
+                    queued.extendDeadline(entry.deadlineNanos);
+                    if (queued.priority.compareTo(priority) > 0) {
+                        // the read is wanted more urgently now, it must not wait behind its old priority class
+                        queues.get(queued.priority).remove(queued);
+                        queued.priority = priority;
+                        queue.addLast(queued);
+                        notEmpty.signal();
+                    }
+                    return (CompletableFuture<T>) queued.request.future;
+                }
+            }
+            if (priority != Priority.EMERGENCY && queue.size() >= queueCapacity) {
+                entry.request.future.completeExceptionally(new RejectedExecutionException("Command queue full"));
+                return entry.request.future;
+            }
+            queue.addLast(entry);
+            if (key != null) {
+                merged.put(key, entry);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return entry.request.future;
+    }
+
+    /**
+     Switch all digital and analog outputs off ahead of every other queued command
+     Controller commands C,U
+     @return future completed when the outputs are off
+     */
+    public CompletableFuture<Void> allOutputsOff() {
+        return submit(Priority.EMERGENCY, c -> {
+            c.setAllDigitalOutputs(0);
+            for (int analogOutput = 0; analogOutput < 4; analogOutput++) {
+                c.setVoltageAnalogOutput(analogOutput, 0);
+            }
+            return null;
+        });
+    }
+
+    /**
+     Reset the controller ahead of every other queued command
+     Controller command R
+     @return future completed after the reset
+     */
+    public CompletableFuture<Void> emergencyReset() {
+        return submit(Priority.EMERGENCY, c -> { c.resetController(); return null; });
+    }
+
+    public int getQueueSize(Priority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     @return number of commands dropped because they did not start before their deadline
+     */
+    public long getExpiredCount() {
+        lock.lock();
+        try {
+            return expiredCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     @return number of reads merged into an equal queued read
+     */
+    public long getMergedCount() {
+        lock.lock();
+        try {
+            return mergedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     @param priority priority class
+     @return histogram of the time commands of the priority waited in the queue
+     */
+    public LatencyHistogram getQueueWait(Priority priority) {
+        return queueWait.get(priority).copy();
+    }
+
+    /**
+     Execute the queued commands and stop the I/O thread, commands submitted afterwards are rejected
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Entry<?> first;
+            lock.lock();
+            try {
+                first = next();
+                while (first == null && running) {
+                    try {
+                        notEmpty.awaitNanos(POLL_NANOS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        running = false;
+                    }
+                    first = next();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (first == null) {
+                break;
+            }
+            executeBatch(first);
+        }
+        LOG.info("PriorityIOController stopped");
+    }
+
+    /**
+     Execute a command and the commands queued behind it in one session, highest priority first
+     */
+    private void executeBatch(Entry<?> first) {
+        synchronized (io) {
+            try (IOSession session = io.openSession()) {
+                Entry<?> entry = first;
+                int executed = 0;
+                while (entry != null) {
+                    entry.request.execute(session);
+                    if (++executed == MAX_BATCH) {
+                        break;
+                    }
+                    lock.lock();
+                    try {
+                        entry = next();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            } catch (SerialPortException | RuntimeException e) {
+                // the session could not be opened or closed, failed requests are already completed
+                first.request.future.completeExceptionally(e);
+                LOG.info(() -> "Command batch failed : "+e.getMessage());
+            }
+        }
+    }
+
+    /**
+     Take the highest priority command that has not expired, the lock is held
+     @return command, null when none is queued
+     */
+    private Entry<?> next() {
+        long now = System.nanoTime();
+        for (Priority priority : PRIORITIES) {
+            ArrayDeque<Entry<?>> queue = queues.get(priority);
+            Entry<?> entry;
+            while ((entry = queue.pollFirst()) != null) {
+                if (entry.key != null) {
+                    merged.remove(entry.key);
+                }
+                if (priority != Priority.EMERGENCY && entry.deadlineNanos != 0 && now - entry.deadlineNanos > 0) {
+                    expiredCount++;
+                    entry.request.future.completeExceptionally(new SerialPortTimeoutException(io.getSerialDevice(), "deadline",
+                            (int) TimeUnit.NANOSECONDS.toMillis(now - entry.queuedNanos)));
+                    continue;
+                }
+                queueWait.get(priority).record(now - entry.queuedNanos);
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "PriorityIOController{"+
+                "ioAddress="+io.getIoAddress()+
+                ", queueCapacity="+queueCapacity+
+                '}';
+    }
+
+    /**
+     Queued command with its priority class and deadline
+     */
+    private static final class Entry<T> {
+        final IORequest<T> request;
+        final long queuedNanos;
+        final Object key;
+        Priority priority;
+        long deadlineNanos;
+
+        Entry(IOTask<T> task, Priority priority, long queuedNanos, long deadlineNanos, Object key) {
+            this.request = new IORequest<>(task);
+            this.priority = priority;
+            this.queuedNanos = queuedNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.key = key;
+        }
+
+        /**
+         A merged read is dropped only when none of the callers wants it anymore
+         */
+        void extendDeadline(long otherDeadlineNanos) {
+            if (deadlineNanos != 0 && (otherDeadlineNanos == 0 || otherDeadlineNanos - deadlineNanos > 0)) {
+                deadlineNanos = otherDeadlineNanos;
+            }
+        }
+    }
+}
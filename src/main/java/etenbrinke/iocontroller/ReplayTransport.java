@@ -0,0 +1,330 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class ReplayTransport implements SerialTransport {
+
+    private final String portName;
+    private final byte[] written;
+    private final byte[] responses;
+    private final int[] responseEnd;
+    private final long[] responseWrittenBefore;
+    private final long[] responseDelayNanos;
+    private final int[] responseAnchor;
+    private final long[] writeEnd;
+    private final long[] writeDone;
+    private final double timeScale;
+    private boolean opened;
+    private long openedNanos;
+    private long writtenCount;
+    private int writesDone;
+    private int response;
+    private int responsePosition;
+    private long mismatchCount;
+
+    /**
+     Transport that plays back a file captured by CaptureTransport, without a controller
+     Every captured read becomes available once the writes that preceded it in the capture are written again,
+     after the captured time since the last of those writes multiplied by the time scale.
+     Bytes written that differ from the capture are counted as mismatches, see getMismatchCount()
+     @param file capture file
+     @param timeScale 1 for the original timing, e.g. 0.1 for ten times faster, 0 without waiting
+     @throws IOException when the capture file cannot be read
+     */
+    public ReplayTransport(Path file, double timeScale) throws IOException {
+        this.timeScale = Math.max(0, timeScale);
+        ByteArrayOutputStream writtenBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream responseBytes = new ByteArrayOutputStream();
+        long[] writeEnds = new long[64];
+        long[] writeTimes = new long[64];
+        int writes = 0;
+        int[] ends = new int[64];
+        long[] before = new long[64];
+        long[] delays = new long[64];
+        int[] anchors = new int[64];
+        int reads = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CaptureTransport.MAGIC || in.readInt() != CaptureTransport.VERSION) {
+                throw new IOException("Not a capture file : "+file);
+            }
+            portName = in.readUTF();
+            long time = 0;
+            int direction;
+            while ((direction = in.read()) >= 0) {
+                time += readVarLong(in);
+                int length = (int) readVarLong(in);
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                if (direction == CaptureTransport.WRITTEN) {
+                    writtenBytes.write(bytes, 0, length);
+                    if (writes == writeEnds.length) {
+                        writeEnds = Arrays.copyOf(writeEnds, writes * 2);
+                        writeTimes = Arrays.copyOf(writeTimes, writes * 2);
+                    }
+                    writeEnds[writes] = writtenBytes.size();
+                    writeTimes[writes] = time;
+                    writes++;
+                } else if (length > 0) {
+                    responseBytes.write(bytes, 0, length);
+                    if (reads == ends.length) {
+                        ends = Arrays.copyOf(ends, reads * 2);
+                        before = Arrays.copyOf(before, reads * 2);
+                        delays = Arrays.copyOf(delays, reads * 2);
+                        anchors = Arrays.copyOf(anchors, reads * 2);
+                    }
+                    ends[reads] = responseBytes.size();
+                    before[reads] = writtenBytes.size();
+                    anchors[reads] = writes - 1;
+                    delays[reads] = time - (writes == 0 ? 0 : writeTimes[writes - 1]);
+                    reads++;
+                }
+            }
+        }
+        written = writtenBytes.toByteArray();
+        responses = responseBytes.toByteArray();
+        writeEnd = Arrays.copyOf(writeEnds, writes);
+        writeDone = new long[writes];
+        responseEnd = Arrays.copyOf(ends, reads);
+        responseWrittenBefore = Arrays.copyOf(before, reads);
+        responseDelayNanos = Arrays.copyOf(delays, reads);
+        responseAnchor = Arrays.copyOf(anchors, reads);
+    }
+
+    @Override
+    public String getPortName() {
+        return portName;
+    }
+
+    @Override
+    public synchronized boolean isOpened() {
+        return opened;
+    }
+
+    /**
+     Open the port and start the playback from the beginning of the capture
+     */
+    @Override
+    public synchronized void openPort() throws SerialPortException {
+        if (opened) {
+            throw new SerialPortException(portName, "openPort()", SerialPortException.TYPE_PORT_ALREADY_OPENED);
+        }
+        opened = true;
+        openedNanos = System.nanoTime();
+        writtenCount = 0;
+        writesDone = 0;
+        response = 0;
+        responsePosition = 0;
+        mismatchCount = 0;
+    }
+
+    @Override
+    public void setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException {
+        checkOpened("setParams()");
+    }
+
+    @Override
+    public synchronized void closePort() throws SerialPortException {
+        checkOpened("closePort()");
+        opened = false;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized void writeBytes(byte[] buffer) throws SerialPortException {
+        checkOpened("writeBytes()");
+        long now = System.nanoTime();
+        for (byte b : buffer) {
+            if (writtenCount >= written.length || written[(int) writtenCount] != b) {
+                mismatchCount++;
+            }
+            writtenCount++;
+        }
+        while (writesDone < writeEnd.length && writeEnd[writesDone] <= writtenCount) {
+            writeDone[writesDone++] = now;
+        }
+        notifyAll();
+    }
+
+    @Override
+    public void writeByte(byte singleByte) throws SerialPortException {
+        writeBytes(new byte[]{singleByte});
+    }
+
+    @Override
+    public void writeInt(int singleInt) throws SerialPortException {
+        writeBytes(new byte[]{(byte) singleInt});
+    }
+
+    @Override
+    public void writeString(String string) throws SerialPortException {
+        writeBytes(string.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public byte[] readBytes(int byteCount) throws SerialPortException {
+        try {
+            return take(byteCount, 0, "readBytes()");
+        } catch (SerialPortTimeoutException e) {
+            //no deadline without timeout
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] readBytes(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        return take(byteCount, timeout, "readBytes()");
+    }
+
+    @Override
+    public String readString(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        return new String(take(byteCount, timeout, "readString()"), StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int length, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        awaitResponse(deadline, timeout, "read()");
+        int count = 0;
+        while (count < length && available(System.nanoTime()) > 0) {
+            int chunk = Math.min(length - count, responseEnd[response] - responsePosition);
+            System.arraycopy(responses, responsePosition, buffer, offset + count, chunk);
+            count += chunk;
+            consume(chunk);
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int getInputBufferBytesCount() throws SerialPortException {
+        checkOpened("getInputBufferBytesCount()");
+        return available(System.nanoTime());
+    }
+
+    /**
+     @return number of bytes written that differ from the capture, 0 when the command path sent the same bytes
+     */
+    public synchronized long getMismatchCount() {
+        return mismatchCount;
+    }
+
+    /**
+     @return true when all captured reads are played back
+     */
+    public synchronized boolean isFinished() {
+        return response >= responseEnd.length;
+    }
+
+    private synchronized byte[] take(int byteCount, int timeout, String methodName) throws SerialPortException, SerialPortTimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        byte[] buffer = new byte[byteCount];
+        int count = 0;
+        while (count < byteCount) {
+            awaitResponse(deadline, timeout, methodName);
+            buffer[count++] = responses[responsePosition];
+            consume(1);
+        }
+        return buffer;
+    }
+
+    private void consume(int byteCount) {
+        responsePosition += byteCount;
+        if (responsePosition == responseEnd[response]) {
+            response++;
+        }
+    }
+
+    /**
+     Wait until a response byte is available, a timeout of 0 waits without deadline
+     */
+    private void awaitResponse(long deadline, int timeout, String methodName) throws SerialPortException, SerialPortTimeoutException {
+        while (true) {
+            checkOpened(methodName);
+            long now = System.nanoTime();
+            if (available(now) > 0) {
+                return;
+            }
+            long wait = timeout > 0 ? deadline - now : Long.MAX_VALUE;
+            if (wait <= 0) {
+                throw new SerialPortTimeoutException(portName, methodName, timeout);
+            }
+            long availableAt = availableAt();
+            if (availableAt != Long.MAX_VALUE) {
+                wait = Math.min(wait, availableAt - now);
+            }
+            try {
+                if (wait == Long.MAX_VALUE) {
+                    wait();
+                } else {
+                    TimeUnit.NANOSECONDS.timedWait(this, Math.max(wait, 1));
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new SerialPortException(portName, methodName, SerialPortException.TYPE_LISTENER_THREAD_INTERRUPTED);
+            }
+        }
+    }
+
+    /**
+     @return bytes of the current response that are available at the given time
+     */
+    private int available(long now) {
+        if (response >= responseEnd.length || availableAt() - now > 0) {
+            return 0;
+        }
+        return responseEnd[response] - responsePosition;
+    }
+
+    /**
+     @return System.nanoTime() at which the current response is available, Long.MAX_VALUE while its writes are missing
+     */
+    private long availableAt() {
+        if (response >= responseEnd.length || writtenCount < responseWrittenBefore[response]) {
+            return Long.MAX_VALUE;
+        }
+        int anchor = responseAnchor[response];
+        long anchorNanos = anchor < 0 ? openedNanos : writeDone[anchor];
+        return anchorNanos + (long) (responseDelayNanos[response] * timeScale);
+    }
+
+    private void checkOpened(String methodName) throws SerialPortException {
+        if (!opened) {
+            throw new SerialPortException(portName, methodName, SerialPortException.TYPE_PORT_NOT_OPENED);
+        }
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in capture file");
+    }
+
+    @Override
+    public String toString() {
+        return "ReplayTransport{"+
+                "portName='"+portName+'\''+
+                ", timeScale="+timeScale+
+                '}';
+    }
+}
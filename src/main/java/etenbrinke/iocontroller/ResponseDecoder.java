@@ -0,0 +1,165 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.concurrent.TimeUnit;
+
+final class ResponseDecoder {
+
+    private static final int SIZE = 256;
+    private static final int MASK = SIZE - 1;
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+    private final SerialTransport transport;
+    private final IOMetrics metrics;
+    private final byte[] ring = new byte[SIZE];
+    private int head;
+    private int count;
+
+    /**
+     Decoder of the CR terminated responses of the controller
+     Bytes are read into a ring buffer as they arrive and numbers are parsed straight from the bytes.
+     Lines that are not a number, like the echo of the command in echo mode, are skipped,
+     as are status bytes, line feeds and spaces around the number
+     @param transport serial transport to read from
+     @param metrics metrics counting the bytes received and malformed lines, echoed commands are not counted.
+     Timeouts are counted by the caller, which may retry the read
+     */
+    ResponseDecoder(SerialTransport transport, IOMetrics metrics) {
+        this.transport = transport;
+        this.metrics = metrics;
+    }
+
+    /**
+     Read an integer response like "1" or " 255"
+     @param timeout maximum wait in ms for the complete response
+     @return value of the response
+     */
+    int readInteger(int timeout) throws SerialPortException, SerialPortTimeoutException {
+        return readNumber(timeout, false);
+    }
+
+    /**
+     Read a fixed-point response like " 5.12" in hundredths, e.g. 512
+     @param timeout maximum wait in ms for the complete response
+     @return value of the response times 100
+     */
+    int readHundredths(int timeout) throws SerialPortException, SerialPortTimeoutException {
+        return readNumber(timeout, true);
+    }
+
+    /**
+     Forget the bytes that were read but not decoded
+     */
+    void clear() {
+        head = 0;
+        count = 0;
+    }
+
+    private int readNumber(int timeout, boolean hundredths) throws SerialPortException, SerialPortTimeoutException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            int length = lineLength();
+            while (length < 0) {
+                fill(deadline, timeout);
+                length = lineLength();
+            }
+            int value = parse(length, hundredths);
+            if (value == NO_VALUE && length > 0 && !isEcho(length)) {
+                metrics.incrementParseErrors();
+            }
+            head = (head + length + 1) & MASK;
+            count -= length + 1;
+            if (value != NO_VALUE) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     @return number of bytes before the first CR, -1 when no complete line is buffered
+     */
+    private int lineLength() {
+        for (int i = 0; i < count; i++) {
+            if (ring[(head + i) & MASK] == CommandEncoder.CR) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void fill(long deadline, int timeout) throws SerialPortException, SerialPortTimeoutException {
+        if (count == SIZE) {
+            // no CR in a full buffer, drop it and resynchronize on the next CR
+            clear();
+            metrics.incrementParseErrors();
+        }
+        int remaining = (int) TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            throw new SerialPortTimeoutException(transport.getPortName(), "readResponse()", timeout);
+        }
+        int tail = (head + count) & MASK;
+        int free = Math.min(SIZE - count, SIZE - tail);
+        int received = transport.read(ring, tail, free, remaining);
+        metrics.addBytesReceived(received);
+        count += received;
+    }
+
+    /**
+     @return true when the line is an echoed command, it starts with the command letter
+     */
+    private boolean isEcho(int length) {
+        for (int i = 0; i < length; i++) {
+            int b = ring[(head + i) & MASK];
+            if (b != ' ' && b != '\n' && b != 0x16 && b != 0) {
+                return (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z');
+            }
+        }
+        return false;
+    }
+
+    /**
+     Parse digits with an optional decimal point, surrounded by filler bytes
+     @return value, NO_VALUE when the line holds no number or anything else
+     */
+    private int parse(int length, boolean hundredths) {
+        int value = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean ended = false;
+        for (int i = 0; i < length; i++) {
+            int b = ring[(head + i) & MASK];
+            if (b >= '0' && b <= '9') {
+                if (ended) {
+                    return NO_VALUE;
+                }
+                if (decimals >= 0) {
+                    if (!hundredths) {
+                        return NO_VALUE;
+                    }
+                    if (decimals == 2) {
+                        continue;
+                    }
+                    decimals++;
+                }
+                value = value * 10 + (b - '0');
+                digits++;
+            } else if (b == '.' && decimals < 0 && hundredths && !ended) {
+                decimals = 0;
+            } else if (b != ' ' && b != '\n' && b != 0x16 && b != 0) {
+                return NO_VALUE;
+            } else if (digits > 0) {
+                ended = true;
+            }
+        }
+        if (digits == 0) {
+            return NO_VALUE;
+        }
+        if (hundredths) {
+            for (int i = Math.max(decimals, 0); i < 2; i++) {
+                value *= 10;
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,44 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+public interface SerialTransport {
+    String getPortName();
+
+    boolean isOpened();
+
+    void openPort() throws SerialPortException;
+
+    void setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException;
+
+    void closePort() throws SerialPortException;
+
+    void writeBytes(byte[] buffer) throws SerialPortException;
+
+    void writeByte(byte singleByte) throws SerialPortException;
+
+    void writeInt(int singleInt) throws SerialPortException;
+
+    void writeString(String string) throws SerialPortException;
+
+    byte[] readBytes(int byteCount) throws SerialPortException;
+
+    byte[] readBytes(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException;
+
+    String readString(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException;
+
+    /**
+     Read the bytes that arrived, waiting for at least one byte
+     @param buffer buffer to read into
+     @param offset first position in the buffer
+     @param length maximum number of bytes to read
+     @param timeout maximum wait in ms for the first byte
+     @return number of bytes read, at least 1
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException no byte arrived within the timeout
+     */
+    int read(byte[] buffer, int offset, int length, int timeout) throws SerialPortException, SerialPortTimeoutException;
+
+    int getInputBufferBytesCount() throws SerialPortException;
+}
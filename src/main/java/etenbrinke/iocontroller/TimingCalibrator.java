@@ -0,0 +1,138 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class TimingCalibrator {
+
+    public static final int DEFAULT_SAMPLES = 20;
+    public static final double DEFAULT_SAFETY_MARGIN = 4;
+    private static final int MIN_TIMEOUT_MS = 5;
+    private static final Logger LOG = Logger.getGlobal();
+    private final IOControllerImpl io;
+
+    /**
+     Calibrator that measures the turnaround of the board behind a controller per command type
+     Only reads are measured, so the outputs are left as they are, unless the reset is measured as well
+     The calibrator locks the controller, other threads using it concurrently have to synchronize on it as well
+     @param io controller, the serial port must be opened
+     */
+    public TimingCalibrator(IOControllerImpl io) {
+        this.io = io;
+    }
+
+    /**
+     Calibrate with DEFAULT_SAMPLES samples per command type and DEFAULT_SAFETY_MARGIN, without reset
+     @return measured profile, apply it with io.setTimingProfile()
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading a response
+     */
+    public TimingProfile calibrate() throws SerialPortException, SerialPortTimeoutException {
+        return calibrate(DEFAULT_SAMPLES, DEFAULT_SAFETY_MARGIN, false);
+    }
+
+    /**
+     Measure the slowest turnaround of every read command, of the ready handshake and optionally of a reset
+     Every timing of the profile is the slowest turnaround measured times the safety margin, at least 5 ms
+     for timeouts, and never more than the default timing. Commands that are not measured keep their default
+     The measurement runs with the default timings, the timing profile of the controller is left as it is
+     @param samples number of times every command is measured
+     @param safetyMargin factor, at least 1, the slowest turnaround is multiplied with
+     @param includeReset true to measure the reset as well, this switches all outputs off
+     @return measured profile, apply it with io.setTimingProfile(), null parameter out of range
+     @throws SerialPortException exception that might occur in Serial interface
+     @throws SerialPortTimeoutException timeout while reading a response
+     */
+    public TimingProfile calibrate(int samples, double safetyMargin, boolean includeReset) throws SerialPortException, SerialPortTimeoutException {
+        if (samples < 1 || safetyMargin < 1) {
+            LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+            return null;
+        }
+        IOMetrics.Command[] commands = IOMetrics.Command.values();
+        long[] slowest = new long[commands.length];
+        long slowestReady = 0;
+        long slowestReset = -1;
+        synchronized (io) {
+            TimingProfile profile = io.getTimingProfile();
+            boolean outputMirror = io.isOutputMirror();
+            io.setTimingProfile(TimingProfile.defaults());
+            try {
+                // reads served from the mirror do not reach the board
+                io.setOutputMirror(false);
+                try (IOSession session = io.openSession()) {
+                    for (int sample = 0; sample < samples; sample++) {
+                        int channel = sample & 3;
+                        long start = System.nanoTime();
+                        io.awaitReady();
+                        slowestReady = Math.max(slowestReady, System.nanoTime() - start);
+                        start = System.nanoTime();
+                        session.getBlockConnection(channel);
+                        start = measured(slowest, IOMetrics.Command.GET_BLOCK_CONNECTION, start);
+                        session.getLogicalLevelDigitalOutput(channel);
+                        start = measured(slowest, IOMetrics.Command.GET_LOGICAL_LEVEL_DIGITAL_OUTPUT, start);
+                        session.getByteDigitalOutputBlock(channel);
+                        start = measured(slowest, IOMetrics.Command.GET_BYTE_DIGITAL_OUTPUT_BLOCK, start);
+                        session.getByteDigitalInputBlock(channel);
+                        start = measured(slowest, IOMetrics.Command.GET_BYTE_DIGITAL_INPUT_BLOCK, start);
+                        session.getLogicalLevelDigitalInput(channel);
+                        start = measured(slowest, IOMetrics.Command.GET_LOGICAL_LEVEL_DIGITAL_INPUT, start);
+                        session.getVoltageAnalogOutput(channel);
+                        start = measured(slowest, IOMetrics.Command.GET_VOLTAGE_ANALOG_OUTPUT, start);
+                        session.getVoltageAnalogInput(sample & 7);
+                        measured(slowest, IOMetrics.Command.GET_VOLTAGE_ANALOG_INPUT, start);
+                    }
+                    if (includeReset) {
+                        for (int sample = 0; sample < samples; sample++) {
+                            slowestReset = Math.max(slowestReset, io.resetUntilReady());
+                        }
+                    }
+                }
+            } finally {
+                io.setTimingProfile(profile);
+                if (outputMirror) {
+                    io.setOutputMirror(true);
+                }
+            }
+        }
+        int[] readTimeouts = new int[commands.length];
+        for (IOMetrics.Command command : commands) {
+            int i = command.ordinal();
+            readTimeouts[i] = slowest[i] == 0 ? TimingProfile.DEFAULT_READ_TIMEOUT_MS : timeoutMs(slowest[i], safetyMargin);
+        }
+        TimingProfile calibrated = new TimingProfile(
+                slowestReset < 0 ? TimingProfile.DEFAULT_RESET_WAIT_MS : Math.max(1, millis(slowestReset, safetyMargin)),
+                timeoutMs(slowestReady, safetyMargin),
+                readTimeouts,
+                safetyMargin);
+        LOG.info(() -> "Timing calibrated on device address "+io.getIoAddress()+" : "+calibrated);
+        return calibrated;
+    }
+
+    /**
+     Keep the slowest turnaround of a command type
+     @return time the measurement ended, the start of the next one
+     */
+    private static long measured(long[] slowest, IOMetrics.Command command, long start) {
+        long now = System.nanoTime();
+        slowest[command.ordinal()] = Math.max(slowest[command.ordinal()], now - start);
+        return now;
+    }
+
+    private static int timeoutMs(long nanos, double safetyMargin) {
+        return Math.max(MIN_TIMEOUT_MS, millis(nanos, safetyMargin));
+    }
+
+    private static int millis(long nanos, double safetyMargin) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) Math.ceil(nanos * safetyMargin / TimeUnit.MILLISECONDS.toNanos(1)));
+    }
+
+    @Override
+    public String toString() {
+        return "TimingCalibrator{"+
+                "ioAddress="+io.getIoAddress()+
+                '}';
+    }
+}
@@ -0,0 +1,161 @@
+package etenbrinke.iocontroller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+
+public final class TimingProfile {
+
+    public static final int DEFAULT_RESET_WAIT_MS = 20;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 30000;
+    public static final int DEFAULT_READY_POLL_TIMEOUT_MS = 50;
+    private static final String RESET_WAIT = "resetWaitMs";
+    private static final String READY_POLL_TIMEOUT = "readyPollTimeoutMs";
+    private static final String READ_TIMEOUT = "readTimeoutMs.";
+    private static final String SAFETY_MARGIN = "safetyMargin";
+    private static final IOMetrics.Command[] COMMANDS = IOMetrics.Command.values();
+    private static final TimingProfile DEFAULTS = new TimingProfile(DEFAULT_RESET_WAIT_MS, DEFAULT_READY_POLL_TIMEOUT_MS,
+            filled(DEFAULT_READ_TIMEOUT_MS), 0);
+    private final int resetWaitMs;
+    private final int readyPollTimeoutMs;
+    private final int[] readTimeoutMs;
+    private final double safetyMargin;
+
+    /**
+     Timings the controller is driven with
+     A profile made by TimingCalibrator holds the measured turnaround of the board times a safety margin,
+     the default profile holds the fixed timings that are safe on every board
+     @param resetWaitMs wait after a reset before the next command
+     @param readyPollTimeoutMs maximum wait for a status byte
+     @param readTimeoutMs maximum wait for the response per command, indexed by IOMetrics.Command ordinal
+     @param safetyMargin factor the measured turnaround was multiplied with, 0 for the default profile
+     */
+    TimingProfile(int resetWaitMs, int readyPollTimeoutMs, int[] readTimeoutMs, double safetyMargin) {
+        this.resetWaitMs = clamp(resetWaitMs, 0, DEFAULT_RESET_WAIT_MS);
+        this.readyPollTimeoutMs = clamp(readyPollTimeoutMs, 1, DEFAULT_READY_POLL_TIMEOUT_MS);
+        this.readTimeoutMs = new int[COMMANDS.length];
+        for (int i = 0; i < COMMANDS.length; i++) {
+            this.readTimeoutMs[i] = clamp(readTimeoutMs[i], 1, DEFAULT_READ_TIMEOUT_MS);
+        }
+        this.safetyMargin = safetyMargin;
+    }
+
+    /**
+     @return profile with the fixed timings that are safe on every board
+     */
+    public static TimingProfile defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     Load a profile stored with store()
+     Timings missing from the file get their default
+     @param file profile file
+     @return profile
+     @throws IOException when the file cannot be read or holds no number where one is expected
+     */
+    public static TimingProfile load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        try {
+            int[] readTimeouts = new int[COMMANDS.length];
+            for (IOMetrics.Command command : COMMANDS) {
+                readTimeouts[command.ordinal()] = Integer.parseInt(
+                        properties.getProperty(READ_TIMEOUT+command.name(), String.valueOf(DEFAULT_READ_TIMEOUT_MS)));
+            }
+            return new TimingProfile(
+                    Integer.parseInt(properties.getProperty(RESET_WAIT, String.valueOf(DEFAULT_RESET_WAIT_MS))),
+                    Integer.parseInt(properties.getProperty(READY_POLL_TIMEOUT, String.valueOf(DEFAULT_READY_POLL_TIMEOUT_MS))),
+                    readTimeouts,
+                    Double.parseDouble(properties.getProperty(SAFETY_MARGIN, "0")));
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a timing profile : "+file, e);
+        }
+    }
+
+    /**
+     Store the profile as a properties file, e.g. one per board
+     @param file profile file, overwritten when it exists
+     @param comment first line of the file, e.g. the serial device and address of the board
+     @throws IOException when the file cannot be written
+     */
+    public void store(Path file, String comment) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(RESET_WAIT, String.valueOf(resetWaitMs));
+        properties.setProperty(READY_POLL_TIMEOUT, String.valueOf(readyPollTimeoutMs));
+        properties.setProperty(SAFETY_MARGIN, String.valueOf(safetyMargin));
+        for (IOMetrics.Command command : COMMANDS) {
+            properties.setProperty(READ_TIMEOUT+command.name(), String.valueOf(readTimeoutMs[command.ordinal()]));
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            properties.store(out, comment);
+        }
+    }
+
+    public int getResetWaitMs() {
+        return resetWaitMs;
+    }
+
+    public int getReadyPollTimeoutMs() {
+        return readyPollTimeoutMs;
+    }
+
+    /**
+     @param command command type
+     @return maximum wait in ms for the response of the command
+     */
+    public int getReadTimeoutMs(IOMetrics.Command command) {
+        return readTimeoutMs[command.ordinal()];
+    }
+
+    public double getSafetyMargin() {
+        return safetyMargin;
+    }
+
+    /**
+     @return true when a timing is shorter than its default, a late response then counts as drift
+     */
+    public boolean isCalibrated() {
+        if (resetWaitMs < DEFAULT_RESET_WAIT_MS || readyPollTimeoutMs < DEFAULT_READY_POLL_TIMEOUT_MS) {
+            return true;
+        }
+        for (int timeout : readTimeoutMs) {
+            if (timeout < DEFAULT_READ_TIMEOUT_MS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(value, max));
+    }
+
+    private static int[] filled(int value) {
+        int[] values = new int[COMMANDS.length];
+        Arrays.fill(values, value);
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder readTimeouts = new StringBuilder();
+        for (IOMetrics.Command command : COMMANDS) {
+            if (readTimeoutMs[command.ordinal()] < DEFAULT_READ_TIMEOUT_MS) {
+                readTimeouts.append(readTimeouts.length() == 0 ? "" : ", ").append(command).append('=').append(readTimeoutMs[command.ordinal()]);
+            }
+        }
+        return "TimingProfile{"+
+                "resetWaitMs="+resetWaitMs+
+                ", readyPollTimeoutMs="+readyPollTimeoutMs+
+                ", readTimeoutMs={"+readTimeouts+'}'+
+                ", safetyMargin="+safetyMargin+
+                '}';
+    }
+}
@@ -0,0 +1,100 @@
+package etenbrinke.iocontroller;
+
+import java.util.Arrays;
+
+public final class Waveform {
+
+    private static final int MAX_VOLTAGE = 1023;
+    private final int[] points;
+
+    private Waveform(int[] points) {
+        if (points.length == 0) {
+            throw new IllegalArgumentException(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        }
+        for (int point : points) {
+            if (point < 0 || point > MAX_VOLTAGE) {
+                throw new IllegalArgumentException(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+            }
+        }
+        this.points = points;
+    }
+
+    /**
+     Waveform of voltages given point by point
+     @param voltages voltages 0-1023, 1023 equals 10.23 V
+     @return waveform
+     */
+    public static Waveform table(int... voltages) {
+        return new Waveform(voltages.clone());
+    }
+
+    /**
+     Straight line from one voltage to another, both included
+     @param from first voltage 0-1023
+     @param to last voltage 0-1023
+     @param pointCount number of points, at least 2
+     @return waveform
+     */
+    public static Waveform ramp(int from, int to, int pointCount) {
+        int[] points = new int[Math.max(pointCount, 2)];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (int) Math.round(from + (double) (to - from) * i / (points.length - 1));
+        }
+        return new Waveform(points);
+    }
+
+    /**
+     Rise from min to max and fall back, one period without repeating min
+     @param min lowest voltage 0-1023
+     @param max highest voltage 0-1023
+     @param pointCount number of points in one period, at least 2
+     @return waveform
+     */
+    public static Waveform triangle(int min, int max, int pointCount) {
+        int[] points = new int[Math.max(pointCount, 2)];
+        double half = points.length / 2.0;
+        for (int i = 0; i < points.length; i++) {
+            double fraction = i <= half ? i / half : (points.length - i) / half;
+            points[i] = (int) Math.round(min + (max - min) * fraction);
+        }
+        return new Waveform(points);
+    }
+
+    /**
+     One period of a sine
+     @param offset voltage 0-1023 of the middle of the sine
+     @param amplitude voltage difference between the middle and the top
+     @param pointCount number of points in one period, at least 2
+     @return waveform
+     */
+    public static Waveform sine(int offset, int amplitude, int pointCount) {
+        int[] points = new int[Math.max(pointCount, 2)];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = (int) Math.round(offset + amplitude * Math.sin(2 * Math.PI * i / points.length));
+        }
+        return new Waveform(points);
+    }
+
+    public int size() {
+        return points.length;
+    }
+
+    /**
+     @param index number of the point
+     @return voltage 0-1023
+     */
+    public int getPoint(int index) {
+        return points[index];
+    }
+
+    public int[] getPoints() {
+        return points.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "Waveform{"+
+                "points="+(points.length <= 16 ? Arrays.toString(points) : points.length+" points")+
+                '}';
+    }
+}
@@ -0,0 +1,304 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+public class WaveformPlayer {
+
+    private static final Logger LOG = Logger.getGlobal();
+    private static final int ANALOG_OUTPUTS = 4;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private final IOControllerImpl io;
+    private final Track[] tracks = new Track[ANALOG_OUTPUTS];
+    private final LatencyHistogram jitter = new LatencyHistogram();
+    private volatile long errorCount;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     Player of waveforms on the 4 analog outputs of a controller with U commands on a background thread
+     Point i of a waveform is due at start + i / pointsPerSecond, an absolute deadline, so the timing does not
+     drift with the command latency. Points that are already overdue when the next one is due are skipped.
+     Outputs due together are set in one session
+     The player locks the controller, other threads using it concurrently have to synchronize on it as well
+     @param io controller, the serial port must be opened
+     */
+    public WaveformPlayer(IOControllerImpl io) {
+        this.io = io;
+    }
+
+    /**
+     Set the waveform of an analog output, it plays from its first point on start()
+     @param analogOutput number 0-3
+     @param waveform voltages to play, null to stop the output
+     @param pointsPerSecond points per second
+     @param loop true to repeat the waveform until stop(), false to play it once
+     */
+    public synchronized void setWaveform(int analogOutput, Waveform waveform, double pointsPerSecond, boolean loop) {
+        if (analogOutput >= 0 && analogOutput < ANALOG_OUTPUTS && pointsPerSecond > 0) {
+            if (running) {
+                LOG.info("Waveform not changed while playing");
+                return;
+            }
+            tracks[analogOutput] = waveform == null ? null
+                    : new Track(waveform, Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / pointsPerSecond)), loop);
+        } else {
+            LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        }
+    }
+
+    /**
+     Start playing all waveforms from their first point
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        for (Track track : tracks) {
+            if (track != null) {
+                track.reset(startNanos);
+            }
+        }
+        jitter.reset();
+        running = true;
+        thread = new Thread(this::run, "WaveformPlayer-"+io.getIoAddress());
+        thread.setDaemon(true);
+        thread.start();
+        LOG.info("Waveform player started");
+    }
+
+    /**
+     Stop playing and wait for the running commands to complete. The outputs keep their last voltage
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        join();
+        LOG.info("Waveform player stopped");
+    }
+
+    /**
+     Wait until the waveforms that do not loop are played
+     @param timeoutMillis maximum wait
+     @return true when the player stopped by itself
+     */
+    public boolean awaitCompletion(long timeoutMillis) {
+        Thread player;
+        synchronized (this) {
+            player = thread;
+        }
+        if (player == null) {
+            return true;
+        }
+        try {
+            player.join(Math.max(1, timeoutMillis));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return !player.isAlive();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     @param analogOutput number 0-3
+     @return number of points sent to the output, -1 parameter out of range
+     */
+    public long getSentCount(int analogOutput) {
+        Track track = track(analogOutput);
+        return track == null ? -1 : track.sentCount;
+    }
+
+    /**
+     @param analogOutput number 0-3
+     @return number of points skipped because they were overdue, -1 parameter out of range
+     */
+    public long getSkippedCount(int analogOutput) {
+        Track track = track(analogOutput);
+        return track == null ? -1 : track.skippedCount;
+    }
+
+    /**
+     @param analogOutput number 0-3
+     @return points per second sent to the output since start, -1 parameter out of range
+     */
+    public double getAchievedRate(int analogOutput) {
+        Track track = track(analogOutput);
+        if (track == null) {
+            return -1;
+        }
+        long elapsed = track.lastSentNanos - track.startNanos;
+        return track.sentCount < 2 || elapsed <= 0 ? 0 : (track.sentCount - 1) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     @return histogram of the delay between the deadline of a point and the completion of its command
+     */
+    public LatencyHistogram getJitter() {
+        return jitter.copy();
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    private Track track(int analogOutput) {
+        if (analogOutput >= 0 && analogOutput < ANALOG_OUTPUTS && tracks[analogOutput] != null) {
+            return tracks[analogOutput];
+        }
+        LOG.info(IOControllerImpl.PARAMETER_OUT_OF_RANGE);
+        return null;
+    }
+
+    private void join() {
+        try {
+            thread.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     Play loop against absolute deadlines per output
+     */
+    private void run() {
+        while (running) {
+            long now = System.nanoTime();
+            long earliest = now + IDLE_PARK_NANOS;
+            int due = 0;
+            boolean playing = false;
+            for (int i = 0; i < ANALOG_OUTPUTS; i++) {
+                Track track = tracks[i];
+                if (track == null || track.finished) {
+                    continue;
+                }
+                playing = true;
+                long deadline = track.skipStale(now);
+                if (track.finished) {
+                    continue;
+                }
+                if (deadline - now <= 0) {
+                    due |= 1 << i;
+                } else if (deadline - earliest < 0) {
+                    earliest = deadline;
+                }
+            }
+            if (!playing) {
+                running = false;
+                LOG.info("Waveform player completed");
+                break;
+            }
+            if (due == 0) {
+                LockSupport.parkNanos(earliest - now);
+                continue;
+            }
+            try {
+                play(due);
+            } catch (SerialPortException | SerialPortTimeoutException e) {
+                errorCount++;
+                LOG.info(() -> "Waveform point failed : "+e.getMessage());
+            }
+        }
+    }
+
+    private void play(int due) throws SerialPortException, SerialPortTimeoutException {
+        synchronized (io) {
+            try (IOSession session = io.openSession()) {
+                while (due != 0) {
+                    int analogOutput = Integer.numberOfTrailingZeros(due);
+                    due &= due - 1;
+                    Track track = tracks[analogOutput];
+                    session.setVoltageAnalogOutput(analogOutput, track.point());
+                    long sent = System.nanoTime();
+                    jitter.record(sent - track.deadline());
+                    track.advance(sent);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WaveformPlayer{"+
+                "ioAddress="+io.getIoAddress()+
+                ", running="+running+
+                '}';
+    }
+
+    /**
+     Playback position of the waveform of one analog output
+     */
+    private static final class Track {
+        final Waveform waveform;
+        final long periodNanos;
+        final boolean loop;
+        long startNanos;
+        long index;
+        volatile long sentCount;
+        volatile long skippedCount;
+        volatile long lastSentNanos;
+        boolean finished;
+
+        Track(Waveform waveform, long periodNanos, boolean loop) {
+            this.waveform = waveform;
+            this.periodNanos = periodNanos;
+            this.loop = loop;
+        }
+
+        void reset(long startNanos) {
+            this.startNanos = startNanos;
+            index = 0;
+            sentCount = 0;
+            skippedCount = 0;
+            lastSentNanos = startNanos;
+            finished = false;
+        }
+
+        long deadline() {
+            return startNanos + index * periodNanos;
+        }
+
+        /**
+         Move to the newest point that is due, counting the older ones as skipped
+         @return deadline of the current point
+         */
+        long skipStale(long now) {
+            long newest = (now - startNanos) / periodNanos;
+            if (!loop) {
+                // the last point is never skipped, the output ends on the end of the waveform
+                newest = Math.min(newest, waveform.size() - 1);
+            }
+            if (newest > index) {
+                skippedCount += newest - index;
+                index = newest;
+            }
+            if (!loop && index >= waveform.size()) {
+                finished = true;
+            }
+            return deadline();
+        }
+
+        int point() {
+            return waveform.getPoint((int) (index % waveform.size()));
+        }
+
+        void advance(long sentNanos) {
+            sentCount++;
+            lastSentNanos = sentNanos;
+            index++;
+            if (!loop && index >= waveform.size()) {
+                finished = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package etenbrinke.iocontroller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncIOControllerTest {
+
+    private static final int ADDRESS = 144;
+    private static final long WAIT_MS = 5000;
+    private IOControllerSimulator simulator;
+    private IOControllerImpl io;
+    private AsyncIOController async;
+
+    @Before
+    public void setUp() {
+        simulator = new IOControllerSimulator("simulator", 0, 0);
+        io = new IOControllerImpl(simulator, ADDRESS);
+        io.openSerialPort();
+    }
+
+    @After
+    public void tearDown() {
+        if (async != null) {
+            async.close();
+        }
+    }
+
+    @Test
+    public void queuedCommandsCompleteInOrder() throws Exception {
+        async = new AsyncIOController(io);
+        List<CompletableFuture<Integer>> reads = new ArrayList<>();
+        for (int value = 0; value < 100; value++) {
+            async.setByteDigitalOutputBlock(2, value);
+            reads.add(async.getByteDigitalOutputBlock(2));
+        }
+        for (int value = 0; value < 100; value++) {
+            assertEquals(value, (int) reads.get(value).get(WAIT_MS, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(99 << 16, simulator.getDigitalOutputs(ADDRESS));
+    }
+
+    @Test
+    public void runtimeExceptionFailsOnlyItsTask() throws Exception {
+        async = new AsyncIOController(io);
+        CompletableFuture<Integer> failing = async.submit(c -> {
+            throw new IllegalStateException("task failed");
+        });
+        CompletableFuture<Integer> next = async.getByteDigitalOutputBlock(0);
+        try {
+            failing.get(WAIT_MS, TimeUnit.MILLISECONDS);
+            fail("Task exception not reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(0, (int) next.get(WAIT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void commandsBeyondTheCapacityAreRejected() throws Exception {
+        async = new AsyncIOController(io, 4, AsyncIOController.OverflowPolicy.REJECT);
+        List<CompletableFuture<Integer>> reads = new ArrayList<>();
+        // the I/O thread cannot take the controller, so the queue fills up
+        synchronized (io) {
+            for (int i = 0; i < 10; i++) {
+                reads.add(async.getByteDigitalInputBlock(0));
+            }
+        }
+        int rejected = 0;
+        for (CompletableFuture<Integer> read : reads) {
+            try {
+                read.get(WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+                rejected++;
+            }
+        }
+        assertTrue("rejected "+rejected, rejected >= 5 && rejected <= 6);
+    }
+
+    @Test
+    public void everyCommandSubmittedDuringCloseCompletes() throws Exception {
+        for (int round = 0; round < 50; round++) {
+            AsyncIOController closing = new AsyncIOController(io, 8, AsyncIOController.OverflowPolicy.BLOCK);
+            int threads = 4;
+            CountDownLatch started = new CountDownLatch(threads);
+            List<CompletableFuture<Integer>> reads = new ArrayList<>();
+            List<Thread> submitters = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread submitter = new Thread(() -> {
+                    started.countDown();
+                    for (int i = 0; i < 50; i++) {
+                        CompletableFuture<Integer> read = closing.getByteDigitalInputBlock(1);
+                        synchronized (reads) {
+                            reads.add(read);
+                        }
+                    }
+                });
+                submitters.add(submitter);
+                submitter.start();
+            }
+            started.await();
+            closing.close();
+            for (Thread submitter : submitters) {
+                submitter.join(WAIT_MS);
+            }
+            synchronized (reads) {
+                for (CompletableFuture<Integer> read : reads) {
+                    try {
+                        read.get(WAIT_MS, TimeUnit.MILLISECONDS);
+                    } catch (ExecutionException e) {
+                        assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    }
+                }
+            }
+        }
+    }
+}
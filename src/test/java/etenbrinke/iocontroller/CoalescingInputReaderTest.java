@@ -0,0 +1,99 @@
+package etenbrinke.iocontroller;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+
+public class CoalescingInputReaderTest {
+
+    private static final int ADDRESS = 144;
+    private static final long WAIT_MS = 5000;
+    private IOControllerSimulator simulator;
+    private IOControllerImpl io;
+
+    @Before
+    public void setUp() {
+        simulator = new IOControllerSimulator("simulator", 0, 0);
+        io = new IOControllerImpl(simulator, ADDRESS);
+        io.openSerialPort();
+    }
+
+    @Test
+    public void concurrentReadersOfOneBlockShareOneRead() throws Exception {
+        CoalescingInputReader reader = new CoalescingInputReader(io, 60000);
+        simulator.setDigitalInputs(ADDRESS, 0x0000_A500);
+        int threads = 8;
+        AtomicIntegerArray levels = new AtomicIntegerArray(threads);
+        List<Thread> callers = new ArrayList<>();
+        // the first caller cannot take the controller, the others join its read
+        synchronized (io) {
+            for (int t = 0; t < threads; t++) {
+                int caller = t;
+                Thread thread = new Thread(() -> {
+                    try {
+                        levels.set(caller, reader.getLogicalLevelDigitalInput(8 + caller));
+                    } catch (Exception e) {
+                        levels.set(caller, -2);
+                    }
+                });
+                callers.add(thread);
+                thread.start();
+            }
+            long deadline = System.currentTimeMillis() + WAIT_MS;
+            while (!allWaiting(callers) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        }
+        for (Thread thread : callers) {
+            thread.join(WAIT_MS);
+        }
+        for (int t = 0; t < threads; t++) {
+            assertEquals((0xA5 >>> t) & 1, levels.get(t));
+        }
+        assertEquals(1, reader.getReadCount());
+        assertEquals(threads - 1, reader.getCoalescedCount());
+    }
+
+    @Test
+    public void freshResultIsReusedUntilInvalidated() throws Exception {
+        CoalescingInputReader reader = new CoalescingInputReader(io, 60000);
+        simulator.setAnalogInput(ADDRESS, 3, 250);
+        assertEquals(2.5, reader.getVoltageAnalogInput(3), 0.001);
+        simulator.setAnalogInput(ADDRESS, 3, 700);
+        assertEquals(2.5, reader.getVoltageAnalogInput(3), 0.001);
+        assertEquals(1, reader.getReadCount());
+        reader.invalidate();
+        assertEquals(7.0, reader.getVoltageAnalogInput(3), 0.001);
+        assertEquals(2, reader.getReadCount());
+    }
+
+    @Test
+    public void parameterOutOfRange() throws Exception {
+        CoalescingInputReader reader = new CoalescingInputReader(io, 0);
+        assertEquals(-1, reader.getByteDigitalInputBlock(4));
+        assertEquals(-1, reader.getLogicalLevelDigitalInput(32));
+        assertEquals(-1, reader.getVoltageAnalogInput(8), 0);
+        assertEquals(0, reader.getReadCount());
+    }
+
+    /**
+     @return true when one caller waits for the controller and the others wait for its read
+     */
+    private static boolean allWaiting(List<Thread> threads) {
+        int blocked = 0;
+        for (Thread thread : threads) {
+            Thread.State state = thread.getState();
+            if (state == Thread.State.BLOCKED) {
+                blocked++;
+            } else if (state != Thread.State.WAITING) {
+                return false;
+            }
+        }
+        return blocked == 1;
+    }
+}
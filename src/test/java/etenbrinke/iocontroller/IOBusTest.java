@@ -0,0 +1,76 @@
+package etenbrinke.iocontroller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IOBusTest {
+
+    private static final int[] ADDRESSES = {144, 146, 148, 150};
+    private static final long WAIT_MS = 5000;
+    private IOControllerSimulator simulator;
+    private IOBus bus;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new IOControllerSimulator("simulator", 0, 0);
+        bus = new IOBus(simulator, IOBus.DEFAULT_QUEUE_CAPACITY);
+        bus.open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bus.close();
+    }
+
+    @Test
+    public void controllersSharingTheLineKeepTheirOwnState() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(ADDRESSES.length * 2);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int caller = 0; caller < ADDRESSES.length * 2; caller++) {
+                IOBus.Handle controller = bus.getController(ADDRESSES[caller % ADDRESSES.length]);
+                int block = caller / ADDRESSES.length;
+                int value = 0x10 * (caller % ADDRESSES.length) + block;
+                results.add(callers.submit(() -> {
+                    int wrong = 0;
+                    for (int i = 0; i < 200; i++) {
+                        controller.setByteDigitalOutputBlock(block, value);
+                        if (controller.getByteDigitalOutputBlock(block) != value) {
+                            wrong++;
+                        }
+                    }
+                    return wrong;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(0, (int) result.get(WAIT_MS, TimeUnit.MILLISECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        for (int i = 0; i < ADDRESSES.length; i++) {
+            assertEquals(0x10 * i | (0x10 * i + 1) << 8, simulator.getDigitalOutputs(ADDRESSES[i]));
+        }
+        assertTrue(bus.getAddressSwitches() > 0);
+    }
+
+    @Test
+    public void taskRunsOnItsOwnController() throws Exception {
+        simulator.setDigitalInputs(148, 0x0000_00A5);
+        IOBus.Handle controller = bus.getController(148);
+        int inputs = controller.submit(c -> c.getByteDigitalInputBlock(0)).get(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(0xA5, inputs);
+        assertEquals(0, bus.getController(150).getByteDigitalInputBlock(0));
+    }
+}
@@ -0,0 +1,28 @@
+package etenbrinke.iocontroller;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class IOControllerImplTest {
+
+    private static final int ADDRESS = 144;
+
+    @Test
+    public void calibratedMissIsCountedAsDriftRetryNotAsTimeout() throws Exception {
+        IOControllerSimulator simulator = new IOControllerSimulator("simulator", 0, 20_000);
+        IOControllerImpl io = new IOControllerImpl(simulator, ADDRESS);
+        io.openSerialPort();
+        int[] readTimeouts = new int[IOMetrics.Command.values().length];
+        Arrays.fill(readTimeouts, 1);
+        io.setTimingProfile(new TimingProfile(TimingProfile.DEFAULT_RESET_WAIT_MS, TimingProfile.DEFAULT_READY_POLL_TIMEOUT_MS,
+                readTimeouts, 0));
+        simulator.setDigitalInputs(ADDRESS, 0x5A);
+        assertEquals(0x5A, io.getByteDigitalInputBlock(0));
+        assertEquals(0, io.getMetrics().getTimeouts());
+        assertEquals(1, io.getMetrics().getDriftRetries());
+        assertEquals(1, io.getTimingDriftCount());
+    }
+}
@@ -0,0 +1,211 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IOGatewayTest {
+
+    private static final int ADDRESS = 146;
+    private static final long WAIT_MS = 5000;
+    private IOControllerSimulator simulator;
+    private IOControllerImpl io;
+    private InputScanner scanner;
+    private IOGateway gateway;
+    private IOGatewayClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new IOControllerSimulator("simulator", 0, 0);
+        io = new IOControllerImpl(simulator, ADDRESS);
+        io.openSerialPort();
+        scanner = new InputScanner(io, 2);
+        gateway = new IOGateway(io, scanner, 0);
+        gateway.start();
+        client = new IOGatewayClient("localhost", gateway.getPort());
+        client.openSerialPort();
+    }
+
+    @After
+    public void tearDown() throws SerialPortException {
+        client.close();
+        gateway.close();
+        scanner.stop();
+    }
+
+    @Test
+    public void openSerialPortReadsTheAddressOfTheController() {
+        assertTrue(client.isConnected());
+        assertEquals(ADDRESS, client.getIoAddress());
+    }
+
+    @Test
+    public void pipelinedCallsFromSeveralThreadsGetTheirOwnResponse() throws Exception {
+        int[] outputs = {0x12, 0x34, 0x56, 0x78};
+        for (int block = 0; block < outputs.length; block++) {
+            client.setByteDigitalOutputBlock(block, outputs[block]);
+        }
+        int[] inputs = {0x11, 0x22, 0x44, 0x88};
+        simulator.setDigitalInputs(ADDRESS, 0x8844_2211);
+        int threads = 8;
+        int calls = 500;
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int block = t % 4;
+                results.add(callers.submit(() -> {
+                    int wrong = 0;
+                    for (int i = 0; i < calls; i++) {
+                        if (client.getByteDigitalOutputBlock(block) != outputs[block]) {
+                            wrong++;
+                        }
+                        if (client.getByteDigitalInputBlock(block) != inputs[block]) {
+                            wrong++;
+                        }
+                    }
+                    return wrong;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(0, (int) result.get(WAIT_MS * 4, TimeUnit.MILLISECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertTrue(gateway.getRequestCount() >= threads * calls * 2);
+    }
+
+    @Test
+    public void subscriberReceivesInputEdges() throws Exception {
+        scanner.start();
+        BlockingQueue<int[]> edges = new ArrayBlockingQueue<>(16);
+        client.addListener((digitalInput, logicalLevel, timestampNanos) -> edges.offer(new int[]{digitalInput, logicalLevel}));
+        assertEquals(1, gateway.getSubscriberCount());
+        simulator.setDigitalInput(ADDRESS, 4, 1);
+        int[] edge = edges.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(4, edge[0]);
+        assertEquals(1, edge[1]);
+    }
+
+    @Test
+    public void requestsBeyondTheQueueCapacityAreRejected() throws Exception {
+        int requests = 1200;
+        int ok = 0;
+        int rejected = 0;
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", gateway.getPort()))) {
+            long requestsBefore = gateway.getRequestCount();
+            ByteBuffer out = ByteBuffer.allocate(requests * GatewayProtocol.REQUEST_SIZE);
+            for (int id = 1; id <= requests; id++) {
+                GatewayProtocol.putRequest(out, GatewayProtocol.GET_BYTE_DIGITAL_INPUT_BLOCK, 0, 0, id);
+            }
+            out.flip();
+            // the I/O thread of the gateway cannot take the controller, so the queue fills up
+            synchronized (io) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                long deadline = System.currentTimeMillis() + WAIT_MS;
+                while (gateway.getRequestCount() - requestsBefore < requests && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+            }
+            ByteBuffer in = ByteBuffer.allocate(requests * GatewayProtocol.FRAME_SIZE);
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0) {
+                    fail("Gateway closed the connection");
+                }
+            }
+            in.flip();
+            for (int i = 0; i < requests; i++) {
+                int kind = in.get();
+                in.position(in.position() + GatewayProtocol.FRAME_SIZE - 1);
+                if (kind == GatewayProtocol.OK) {
+                    ok++;
+                } else if (kind == GatewayProtocol.REJECTED) {
+                    rejected++;
+                }
+            }
+        }
+        assertEquals(requests, ok + rejected);
+        assertTrue("rejected "+rejected, rejected > 0);
+        assertTrue("ok "+ok, ok > 0);
+    }
+
+    @Test
+    public void pendingCallsFailWhenTheClientDisconnects() throws Exception {
+        int threads = 4;
+        CountDownLatch failed = new CountDownLatch(threads);
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        try {
+            long requestsBefore = gateway.getRequestCount();
+            synchronized (io) {
+                for (int t = 0; t < threads; t++) {
+                    callers.execute(() -> {
+                        try {
+                            client.getByteDigitalInputBlock(0);
+                        } catch (SerialPortException e) {
+                            failed.countDown();
+                        } catch (Exception e) {
+                            // a timeout is not the expected failure
+                        }
+                    });
+                }
+                long deadline = System.currentTimeMillis() + WAIT_MS;
+                while (gateway.getRequestCount() - requestsBefore < threads && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(1);
+                }
+                client.closeSerialPort();
+                assertTrue(failed.await(WAIT_MS, TimeUnit.MILLISECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertFalse(client.isConnected());
+        assertEquals(-1, client.getIoAddress());
+    }
+
+    @Test
+    public void failedOpenLeavesTheClientDisconnected() throws Exception {
+        try (ServerSocket refusing = new ServerSocket(0)) {
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = refusing.accept();
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // server closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+            IOGatewayClient other = new IOGatewayClient("localhost", refusing.getLocalPort());
+            other.openSerialPort();
+            assertFalse(other.isConnected());
+            assertEquals(-1, other.getIoAddress());
+        }
+    }
+}
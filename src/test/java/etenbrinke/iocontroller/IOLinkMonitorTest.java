@@ -0,0 +1,168 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortException;
+import jssc.SerialPortTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IOLinkMonitorTest {
+
+    private static final int ADDRESS = 144;
+    private static final long WAIT_MS = 5000;
+    private IOControllerSimulator simulator;
+    private BreakableTransport transport;
+    private IOControllerImpl io;
+    private IOLinkMonitor monitor;
+    private final BlockingQueue<IOLinkMonitor.LinkState> states = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new IOControllerSimulator("simulator", 0, 0);
+        transport = new BreakableTransport(simulator);
+        io = new IOControllerImpl(transport, ADDRESS);
+        io.openSerialPort();
+        monitor = new IOLinkMonitor(io, 5, 50);
+        monitor.addListener((state, downtimeNanos) -> states.add(state));
+    }
+
+    @After
+    public void tearDown() {
+        monitor.stop();
+    }
+
+    @Test
+    public void lostLinkIsReconnectedAndTheStateRestored() throws Exception {
+        synchronized (io) {
+            io.setByteDigitalOutputBlock(0, 0x3C);
+            io.setVoltageAnalogOutput(1, 432);
+        }
+        monitor.start();
+        transport.broken = true;
+        assertEquals(IOLinkMonitor.LinkState.DOWN, states.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        // the board loses its outputs while the adapter is gone
+        simulator.writeBytes(new byte[]{(byte) ADDRESS, 0x18, 'R', 13});
+        transport.broken = false;
+        assertEquals(IOLinkMonitor.LinkState.UP, states.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(IOLinkMonitor.LinkState.UP, monitor.getLinkState());
+        assertEquals(1, monitor.getDownCount());
+        assertTrue(monitor.getLastDowntimeNanos() > 0);
+        assertEquals(0x3C, simulator.getDigitalOutputs(ADDRESS) & 0xFF);
+        assertEquals(432, simulator.getAnalogOutput(ADDRESS, 1));
+    }
+
+    @Test
+    public void healthyLinkStaysUp() throws Exception {
+        monitor.start();
+        Thread.sleep(50);
+        assertEquals(IOLinkMonitor.LinkState.UP, monitor.getLinkState());
+        assertEquals(0, monitor.getDownCount());
+        assertTrue(states.isEmpty());
+    }
+
+    /**
+     Transport that fails every call while it is broken, like a USB-serial adapter that was pulled
+     */
+    private static final class BreakableTransport implements SerialTransport {
+        private final SerialTransport transport;
+        volatile boolean broken;
+
+        BreakableTransport(SerialTransport transport) {
+            this.transport = transport;
+        }
+
+        private void check(String methodName) throws SerialPortException {
+            if (broken) {
+                throw new SerialPortException(transport.getPortName(), methodName, "Adapter removed");
+            }
+        }
+
+        @Override
+        public String getPortName() {
+            return transport.getPortName();
+        }
+
+        @Override
+        public boolean isOpened() {
+            return transport.isOpened();
+        }
+
+        @Override
+        public void openPort() throws SerialPortException {
+            check("openPort()");
+            transport.openPort();
+        }
+
+        @Override
+        public void setParams(int baudRate, int dataBits, int stopBits, int parity) throws SerialPortException {
+            check("setParams()");
+            transport.setParams(baudRate, dataBits, stopBits, parity);
+        }
+
+        @Override
+        public void closePort() throws SerialPortException {
+            transport.closePort();
+        }
+
+        @Override
+        public void writeBytes(byte[] buffer) throws SerialPortException {
+            check("writeBytes()");
+            transport.writeBytes(buffer);
+        }
+
+        @Override
+        public void writeByte(byte singleByte) throws SerialPortException {
+            check("writeByte()");
+            transport.writeByte(singleByte);
+        }
+
+        @Override
+        public void writeInt(int singleInt) throws SerialPortException {
+            check("writeInt()");
+            transport.writeInt(singleInt);
+        }
+
+        @Override
+        public void writeString(String string) throws SerialPortException {
+            check("writeString()");
+            transport.writeString(string);
+        }
+
+        @Override
+        public byte[] readBytes(int byteCount) throws SerialPortException {
+            check("readBytes()");
+            return transport.readBytes(byteCount);
+        }
+
+        @Override
+        public byte[] readBytes(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+            check("readBytes()");
+            return transport.readBytes(byteCount, timeout);
+        }
+
+        @Override
+        public String readString(int byteCount, int timeout) throws SerialPortException, SerialPortTimeoutException {
+            check("readString()");
+            return transport.readString(byteCount, timeout);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length, int timeout) throws SerialPortException, SerialPortTimeoutException {
+            check("read()");
+            return transport.read(buffer, offset, length, timeout);
+        }
+
+        @Override
+        public int getInputBufferBytesCount() throws SerialPortException {
+            check("getInputBufferBytesCount()");
+            return transport.getInputBufferBytesCount();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package etenbrinke.iocontroller;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IOLoadDriverTest {
+
+    private static final Pattern OPERATIONS = Pattern.compile("\"operations\":(\\d+)");
+    private static final Pattern COUNT = Pattern.compile("\"count\":(\\d+)");
+
+    @Test
+    public void summaryHoldsTheSumOfTheIntervals() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("baudRate", "0");
+        properties.setProperty("turnaroundMicros", "0");
+        properties.setProperty("addresses", "144,146");
+        properties.setProperty("threads", "4");
+        properties.setProperty("durationSeconds", "1");
+        properties.setProperty("reportIntervalMillis", "5");
+        properties.setProperty("mix.GET_BYTE_DIGITAL_INPUT_BLOCK", "3");
+        properties.setProperty("mix.SET_BYTE_DIGITAL_OUTPUT_BLOCK", "1");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PrintStream report = new PrintStream(out, false, "UTF-8")) {
+            new IOLoadDriver(IOLoadScenario.of(properties)).run(report);
+        }
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertTrue(lines.length > 2);
+        long operations = 0;
+        for (int i = 0; i < lines.length - 1; i++) {
+            operations += first(OPERATIONS, lines[i]);
+        }
+        String summary = lines[lines.length - 1];
+        assertTrue(summary.startsWith("{\"summary\":true"));
+        assertTrue(operations > 0);
+        assertEquals(operations, first(OPERATIONS, summary));
+        long commands = 0;
+        Matcher count = COUNT.matcher(summary);
+        while (count.find()) {
+            commands += Long.parseLong(count.group(1));
+        }
+        assertEquals(operations, commands);
+    }
+
+    private static long first(Pattern pattern, String line) {
+        Matcher matcher = pattern.matcher(line);
+        assertTrue(line, matcher.find());
+        return Long.parseLong(matcher.group(1));
+    }
+}
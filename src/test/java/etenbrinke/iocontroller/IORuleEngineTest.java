@@ -0,0 +1,91 @@
+package etenbrinke.iocontroller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IORuleEngineTest {
+
+    private static final int ADDRESS = 144;
+    private static final long WAIT_MS = 5000;
+    private IOControllerSimulator simulator;
+    private IORuleEngine rules;
+
+    @Before
+    public void setUp() {
+        simulator = new IOControllerSimulator("simulator", 0, 0);
+        IOControllerImpl io = new IOControllerImpl(simulator, ADDRESS);
+        io.openSerialPort();
+        rules = new IORuleEngine(io, 1);
+    }
+
+    @After
+    public void tearDown() {
+        rules.stop();
+    }
+
+    @Test
+    public void logicAndHysteresisDriveAnOutput() throws Exception {
+        int pump = rules.digitalOutput(0, rules.and(rules.digitalInput(4), rules.not(rules.analogAbove(2, 800, 50))));
+        rules.start();
+        awaitScans(2);
+        assertFalse(output(0));
+        simulator.setDigitalInput(ADDRESS, 4, 1);
+        await(() -> output(0));
+        simulator.setAnalogInput(ADDRESS, 2, 900);
+        await(() -> !output(0));
+        // within the hysteresis the signal keeps its value
+        simulator.setAnalogInput(ADDRESS, 2, 780);
+        awaitScans(rules.getScanCount() + 3);
+        assertFalse(output(0));
+        simulator.setAnalogInput(ADDRESS, 2, 700);
+        await(() -> output(0));
+        assertEquals(0, rules.getErrorCount());
+        assertTrue(rules.getReactionLatency(pump).getCount() >= 3);
+    }
+
+    @Test
+    public void onDelayWaitsForTheDelay() throws Exception {
+        int input = rules.digitalInput(5);
+        rules.digitalOutput(1, rules.onDelay(input, 100));
+        rules.start();
+        awaitScans(2);
+        simulator.setDigitalInput(ADDRESS, 5, 1);
+        long set = System.nanoTime();
+        await(() -> output(1));
+        assertTrue(System.nanoTime() - set >= 100_000_000L);
+        simulator.setDigitalInput(ADDRESS, 5, 0);
+        await(() -> !output(1));
+    }
+
+    @Test
+    public void rulesAreNotChangedWhileRunning() {
+        int input = rules.digitalInput(0);
+        rules.start();
+        assertEquals(-1, rules.not(input));
+        rules.stop();
+        assertTrue(rules.not(input) >= 0);
+    }
+
+    private boolean output(int digitalOutput) {
+        return (simulator.getDigitalOutputs(ADDRESS) >>> digitalOutput & 1) == 1;
+    }
+
+    private void awaitScans(long scans) throws InterruptedException {
+        await(() -> rules.getScanCount() >= scans);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,103 @@
+package etenbrinke.iocontroller;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InputScannerTest {
+
+    private static final int ADDRESS = 144;
+    private static final long WAIT_MS = 5000;
+    private IOControllerSimulator simulator;
+    private InputScanner scanner;
+    private final BlockingQueue<int[]> edges = new LinkedBlockingQueue<>();
+
+    @Before
+    public void setUp() {
+        simulator = new IOControllerSimulator("simulator", 0, 0);
+        IOControllerImpl io = new IOControllerImpl(simulator, ADDRESS);
+        io.openSerialPort();
+        scanner = new InputScanner(io, 1);
+        scanner.addListener((digitalInput, logicalLevel, timestampNanos) -> edges.add(new int[]{digitalInput, logicalLevel}));
+    }
+
+    @After
+    public void tearDown() {
+        scanner.stop();
+    }
+
+    @Test
+    public void firstScanSetsTheReferenceWithoutEdges() throws Exception {
+        simulator.setDigitalInputs(ADDRESS, 0x0000_0F0F);
+        scanner.start();
+        awaitScans(3);
+        assertEquals(0x0000_0F0F, scanner.getInputs());
+        assertEquals(1, scanner.getLogicalLevelDigitalInput(8));
+        assertEquals(0, scanner.getLogicalLevelDigitalInput(4));
+        assertNull(edges.poll());
+    }
+
+    @Test
+    public void risingAndFallingEdgesAreReportedOnce() throws Exception {
+        scanner.start();
+        awaitScans(1);
+        simulator.setDigitalInput(ADDRESS, 17, 1);
+        assertArrayEquals(new int[]{17, 1}, edges.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        // the blocks are read one by one, so the two edges may come from one scan or from two
+        simulator.setDigitalInputs(ADDRESS, 0x8000_0000);
+        Set<String> changes = new HashSet<>();
+        changes.add(Arrays.toString(edges.poll(WAIT_MS, TimeUnit.MILLISECONDS)));
+        changes.add(Arrays.toString(edges.poll(WAIT_MS, TimeUnit.MILLISECONDS)));
+        assertEquals(new HashSet<>(Arrays.asList("[17, 0]", "[31, 1]")), changes);
+        awaitScans(scanner.getScanCount() + 3);
+        assertNull(edges.poll());
+        assertEquals(0, scanner.getErrorCount());
+    }
+
+    @Test
+    public void failingListenerDoesNotStopTheScans() throws Exception {
+        scanner.addListener((digitalInput, logicalLevel, timestampNanos) -> {
+            throw new IllegalStateException("listener failed");
+        });
+        scanner.start();
+        awaitScans(1);
+        simulator.setDigitalInput(ADDRESS, 3, 1);
+        assertArrayEquals(new int[]{3, 1}, edges.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        simulator.setDigitalInput(ADDRESS, 3, 0);
+        assertArrayEquals(new int[]{3, 0}, edges.poll(WAIT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(scanner.isRunning());
+    }
+
+    @Test
+    public void scannerCanBeRestarted() throws Exception {
+        scanner.start();
+        awaitScans(1);
+        scanner.stop();
+        assertFalse(scanner.isRunning());
+        long scans = scanner.getScanCount();
+        scanner.start();
+        awaitScans(scans + 2);
+        assertTrue(scanner.isRunning());
+    }
+
+    private void awaitScans(long scans) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (scanner.getScanCount() < scans && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue("scans "+scanner.getScanCount(), scanner.getScanCount() >= scans);
+    }
+}
@@ -0,0 +1,116 @@
+package etenbrinke.iocontroller;
+
+import jssc.SerialPortTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PriorityIOControllerTest {
+
+    private static final int ADDRESS = 144;
+    private static final long WAIT_MS = 5000;
+    private IOControllerImpl io;
+    private PriorityIOController priority;
+    private final List<String> executed = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setUp() {
+        io = new IOControllerImpl(new IOControllerSimulator("simulator", 0, 0), ADDRESS);
+        io.openSerialPort();
+        priority = new PriorityIOController(io);
+    }
+
+    @After
+    public void tearDown() {
+        priority.close();
+    }
+
+    @Test
+    public void emergencyTaskRunsAheadOfQueuedTasks() throws Exception {
+        CompletableFuture<?> last;
+        synchronized (io) {
+            hold(PriorityIOController.Priority.BACKGROUND, "running");
+            for (int i = 0; i < 3; i++) {
+                priority.submit(PriorityIOController.Priority.BACKGROUND, task("background"+i));
+            }
+            priority.submit(PriorityIOController.Priority.READ, task("read"));
+            last = priority.submit(PriorityIOController.Priority.EMERGENCY, task("emergency"));
+        }
+        last.get(WAIT_MS, TimeUnit.MILLISECONDS);
+        priority.submit(PriorityIOController.Priority.BACKGROUND, task("done")).get(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("running", "emergency", "read", "background0", "background1", "background2", "done"), executed);
+    }
+
+    @Test
+    public void taskThatMissedItsDeadlineIsDropped() throws Exception {
+        CompletableFuture<?> late;
+        synchronized (io) {
+            hold(PriorityIOController.Priority.CONTROL, "running");
+            late = priority.submit(PriorityIOController.Priority.CONTROL, 1, task("late"));
+            Thread.sleep(20);
+        }
+        try {
+            late.get(WAIT_MS, TimeUnit.MILLISECONDS);
+            fail("Late task executed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SerialPortTimeoutException);
+        }
+        assertEquals(1, priority.getExpiredCount());
+        assertEquals(Collections.singletonList("running"), executed);
+    }
+
+    @Test
+    public void mergedReadMovesUpToTheHigherPriority() throws Exception {
+        CompletableFuture<Integer> background;
+        CompletableFuture<Integer> read;
+        synchronized (io) {
+            hold(PriorityIOController.Priority.BACKGROUND, "running");
+            priority.submit(PriorityIOController.Priority.BACKGROUND, task("background"));
+            background = priority.submitRead(PriorityIOController.Priority.BACKGROUND, 0, "f0", read("f0"));
+            read = priority.submitRead(PriorityIOController.Priority.READ, 0, "f0", read("f0 again"));
+        }
+        assertSame(background, read);
+        assertEquals(0, (int) read.get(WAIT_MS, TimeUnit.MILLISECONDS));
+        priority.submit(PriorityIOController.Priority.BACKGROUND, task("done")).get(WAIT_MS, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList("running", "f0", "background", "done"), executed);
+        assertEquals(1, priority.getMergedCount());
+    }
+
+    /**
+     Submit a task and wait until the I/O thread took it, it then waits for the controller the caller holds
+     */
+    private void hold(PriorityIOController.Priority priorityClass, String name) throws InterruptedException {
+        priority.submit(priorityClass, task(name));
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (priority.getQueueSize(priorityClass) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private IOTask<Void> task(String name) {
+        return c -> {
+            executed.add(name);
+            return null;
+        };
+    }
+
+    private IOTask<Integer> read(String name) {
+        return c -> {
+            executed.add(name);
+            return c.getByteDigitalInputBlock(0);
+        };
+    }
+}